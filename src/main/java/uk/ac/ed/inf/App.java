@@ -1,10 +1,12 @@
 package uk.ac.ed.inf;
 
 
-import com.mapbox.geojson.*;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.TreeSet;
 
 /**
  * This class ties all the others together to plan the route
@@ -13,11 +15,17 @@ import java.util.ArrayList;
  */
 public class App
 {
+    /** The time budget meaning the orders are planned in a fixed number of steps, rather than for a wall-clock time */
+    private static final long NO_TIME_BUDGET = 0;
+
     /**
      * Executes the program.
      *
      * @param args the arguments needed to execute the program for a specific day in the
-     *             following order; DAY MONTH YEAR WEB_SERVER_PORT DATABASE_PORT
+     *             following order; DAY MONTH YEAR WEB_SERVER_PORT DATABASE_PORT, optionally followed by the
+     *             FlightPathSchema in which the flight path is stored, ROWS by default, and then by a wall-clock
+     *             time in milliseconds for which the orders are planned, instead of the fixed number of steps that
+     *             plans them the same way every run
      */
     public static void main( String[] args )
     {
@@ -29,29 +37,70 @@ public class App
         NoFlyZones zones = new NoFlyZones(WebServer.MACHINE, args[3]);
         Landmarks landmarks = new Landmarks(WebServer.MACHINE, args[3]);
         Database.setJdcbString(args[4]);
+        if(args.length > 5){
+            try {
+                Database.setFlightPathSchema(FlightPathSchema.valueOf(args[5].toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.err.println(String.format("Fatal error in App.main: unknown flight path schema %s.", args[5]));
+                System.exit(1);
+            }
+        }
+        long timeBudgetMillis = NO_TIME_BUDGET;
+        if(args.length > 6){
+            try {
+                timeBudgetMillis = Long.parseLong(args[6]);
+            } catch (NumberFormatException e) {
+                System.err.println(String.format("Fatal error in App.main: %s is not a number of milliseconds.", args[6]));
+                System.exit(1);
+            }
+            if(timeBudgetMillis <= 0){
+                System.err.println(String.format("Fatal error in App.main: %s is not a positive number of milliseconds.", args[6]));
+                System.exit(1);
+            }
+        }
 
         // Retrieving necessary data from web-server/database.
         ArrayList<Order> orders = getDaysOrders(dateStr, words, menus);
-        getAllShops(menus, words);
-        getAllLandmarks(landmarks, words);
+        TreeSet<String> coreAddresses = new TreeSet<>();
+        coreAddresses.addAll(getAllShops(menus, words));
+        coreAddresses.addAll(getAllLandmarks(landmarks, words));
         words.getDetailsFromServer(Drone.AT_W3W_ADDR);
+        coreAddresses.add(Drone.AT_W3W_ADDR);
         zones.getZones();
+        zones.buildRaster();
 
-        // Real world locations modelled using a graph
-        LocationGraph lg = new LocationGraph(words, zones);
+        // Real world locations modelled using a graph; the locations used every day, then the day's delivery locations.
+        LocationGraph lg = new LocationGraph(words, zones, coreAddresses, Paths.get(GraphCache.DEFAULT_FILE_NAME));
+        ArrayList<String> deliveryAddresses = new ArrayList<>();
+        for(Order o: orders){
+            deliveryAddresses.add(o.deliveryLoc);
+        }
+        lg.attach(deliveryAddresses);
 
-        // Actual flight path calculations
+        // Actual flight path calculations, each delivery written to the database in the background once it is made.
+        // The writer is closed whatever happens, so that its thread never keeps the application running.
+        DeliveryWriter writer = new DeliveryWriter();
+        ArrayList<FlightPath> flightPath;
         Drone d = new Drone(lg, words, zones);
-        ArrayList<Delivery> deliveriesMade = getDeliveriesMade(orders, menus, d);
-        ArrayList<ArrayList<LongLat>> flightPath = getFlightPath(deliveriesMade, d);
-
-        // Deliveries made and flightpath written to database.
-        Database.insertDeliveries(deliveriesMade);
-        // Dud delivery for the final sub-path in flight of moves back to base.
-        deliveriesMade.add(new Delivery());
-        Database.insertFlightPaths(flightPath, deliveriesMade);
+        try {
+            ArrayList<Delivery> deliveriesMade = getDeliveriesMade(getPlannedOrders(orders, menus, lg, timeBudgetMillis), menus, d, writer);
+            flightPath = getFlightPath(deliveriesMade, d, writer);
+        } finally {
+            writer.close();
+        }
+        PathCache paths = d.getPathCache();
+        System.out.println(String.format("PATH CACHE HELD %d PATHS: %d HITS, %d MISSES, %d EVICTIONS\n",
+                paths.size(), paths.getHits(), paths.getMisses(), paths.getEvictions()));
 
+        // GeoJSON written while the last deliveries and the flightpath are still being written to the database.
         createGeoJsonOutput(LocationGraph.mergeSubPaths(flightPath), dateStr);
+        int numWritten = writer.awaitCompletion();
+        System.out.println(String.format("WROTE %d DELIVERIES AND %d SUB-PATHS TO DATABASE\n", numWritten, flightPath.size()));
+        ConnectionPool pool = Database.getConnectionPool();
+        System.out.println(String.format("DATABASE POOL OPENED %d CONNECTIONS FOR %d BORROWS: %d REUSED, %d WAITED %d MS; %d STATEMENTS PREPARED, %d REUSED\n",
+                pool.getConnectionsOpened(), pool.getBorrows(), pool.getReuses(), pool.getWaits(), pool.getWaitMillis(),
+                pool.getStatementsPrepared(), pool.getStatementReuses()));
+        Database.close();
     }
 
     /**
@@ -80,14 +129,18 @@ public class App
      *
      * @param menus the Menus object required to read the details of shops from the web server
      * @param words the Words object to store the location details of the fetched shops locally
+     * @return the w3w addresses of the shops
      */
-    private static void getAllShops(Menus menus, Words words){
+    private static ArrayList<String> getAllShops(Menus menus, Words words){
         ArrayList<Shop> shops = menus.getShopsWithMenus();
+        ArrayList<String> shopAddresses = new ArrayList<>();
         for(Shop s: shops){
             words.getDetailsFromServer(s.location);
+            shopAddresses.add(s.location);
             System.out.println(s.location);
         }
         System.out.println(String.format("READ %d SHOPS FROM WEBSERVER\n", shops.size()));
+        return shopAddresses;
     }
 
     /**
@@ -96,14 +149,55 @@ public class App
      *
      * @param landmarks the Landmarks object used to fetch the details of the landmarks stored on the web server
      * @param words the Words object used to store the location details of the fetched landmarks locally
+     * @return the w3w addresses of the landmarks
      */
-    private static void getAllLandmarks(Landmarks landmarks, Words words){
+    private static ArrayList<String> getAllLandmarks(Landmarks landmarks, Words words){
         ArrayList<String> landmarkAddresses = landmarks.getLandmarksAddresses();
         for(String landmarkAddress: landmarkAddresses){
             words.getDetailsFromServer(landmarkAddress);
             System.out.println(landmarkAddress);
         }
         System.out.println(String.format("READ %d LANDMARKS FROM WEBSERVER\n", landmarkAddresses.size()));
+        return landmarkAddresses;
+    }
+
+    /**
+     * Plans the order in which the drone attempts the day's orders, reporting the value and moves of the plan against
+     * those of trying the orders from the most valuable down.
+     *
+     * The planned orders come first, in the order planned; the rest follow from the most valuable down, so that any
+     * battery the plan leaves unused is still filled if the drone's real moves fall short of the estimate. Without a
+     * time budget the plan is found in a fixed number of steps from a fixed seed, so every run of a day plans it the
+     * same way.
+     *
+     * @param orders the day's orders, sorted by value
+     * @param menus the Menus object used to find the locations of shops associated to each order
+     * @param lg the graph to which every delivery location of the orders has been attached
+     * @param timeBudgetMillis the wall-clock time in milliseconds for which the orders are planned, or NO_TIME_BUDGET
+     * @return the day's orders, in the order the drone is to attempt them
+     */
+    private static ArrayList<Order> getPlannedOrders(ArrayList<Order> orders, Menus menus, LocationGraph lg, long timeBudgetMillis){
+        ArrayList<ArrayList<String>> pickUpLocs = new ArrayList<>();
+        for(Order o: orders){
+            pickUpLocs.add(menus.getShopLocns(o.contents));
+        }
+        DeliveryPlanner planner = new DeliveryPlanner(orders, pickUpLocs, lg, Drone.AT_W3W_ADDR, Drone.STARTING_MOVES_TOTAL);
+        int[] greedy = planner.planGreedy();
+        int[] plan = (timeBudgetMillis == NO_TIME_BUDGET)
+                ? planner.planForRestarts(LocationGraph.DEFAULT_PARALLELISM, DeliveryPlanner.DEFAULT_CHAINS,
+                        DeliveryPlanner.DEFAULT_RESTARTS, DeliveryPlanner.DEFAULT_SEED)
+                : planner.plan(LocationGraph.DEFAULT_PARALLELISM, timeBudgetMillis, DeliveryPlanner.DEFAULT_SEED);
+        System.out.println(String.format("PLANNED %d ORDERS WORTH %d IN %d MOVES; GREEDY %d ORDERS WORTH %d IN %d MOVES\n",
+                plan.length, planner.getValue(plan), planner.getMoves(plan),
+                greedy.length, planner.getValue(greedy), planner.getMoves(greedy)));
+
+        ArrayList<Order> plannedOrders = planner.getOrders(plan);
+        for(Order o: orders){
+            if(!plannedOrders.contains(o)){
+                plannedOrders.add(o);
+            }
+        }
+        return plannedOrders;
     }
 
     /**
@@ -112,15 +206,18 @@ public class App
      * @param orders the list of orders that the drone wishes to make
      * @param menus the Menus object used to find the locations of shops associated to each order
      * @param d the Drone object making the deliveries
+     * @param writer the writer to which each delivery is handed as soon as it is made
      * @return an ArrayList of Delivery objects, one for each order successfully delivered by the drone
      */
-    private static ArrayList<Delivery> getDeliveriesMade(ArrayList<Order> orders, Menus menus, Drone d){
+    private static ArrayList<Delivery> getDeliveriesMade(ArrayList<Order> orders, Menus menus, Drone d, DeliveryWriter writer){
         ArrayList<Delivery> deliveriesMade = new ArrayList<>();
         for(Order o: orders){
-            ArrayList<LongLat> pointsVisitedDeliveringOrder = d.makeDelivery(menus.getShopLocns(o.contents), o.deliveryLoc);
+            FlightPath pointsVisitedDeliveringOrder = d.makeDelivery(menus.getShopLocns(o.contents), o.deliveryLoc);
             // if order has been delivered
             if(!(pointsVisitedDeliveringOrder.isEmpty())) {
-                deliveriesMade.add(new Delivery(pointsVisitedDeliveringOrder, o));
+                Delivery delivery = new Delivery(pointsVisitedDeliveringOrder, o);
+                deliveriesMade.add(delivery);
+                writer.submit(delivery);
             }
         }
         return deliveriesMade;
@@ -131,18 +228,20 @@ public class App
      *
      * @param deliveriesMade the list of deliveries made by the drone
      * @param d the drone making deliveries
-     * @return An ArrayList of ArrayLists of What3Words.LongLat objects. The ArrayList as a whole
-     *         represents the flight path as a whole, with each nested ArrayList representing a sub-path
-     *         within the flight path. Please see the class documentation of LocationGraph for clarity on
-     *         path/sub-path terminology.
+     * @param writer the writer to which the drone's return to base is handed, once found, as the end of the flight path
+     * @return An ArrayList of FlightPaths. The ArrayList as a whole represents the flight path as a whole,
+     *         with each FlightPath representing a sub-path within the flight path. Please see the class
+     *         documentation of LocationGraph for clarity on path/sub-path terminology.
      */
-    private static ArrayList<ArrayList<LongLat>> getFlightPath(ArrayList<Delivery> deliveriesMade, Drone d){
-        ArrayList<ArrayList<LongLat>> flightPathPoints = new ArrayList<>();
+    private static ArrayList<FlightPath> getFlightPath(ArrayList<Delivery> deliveriesMade, Drone d, DeliveryWriter writer){
+        ArrayList<FlightPath> flightPathPoints = new ArrayList<>();
         for(Delivery delivery: deliveriesMade){
             flightPathPoints.add(delivery.pointsVisited);
         }
         // After all deliveries are made, flight path must guide drone back to its base.
-        flightPathPoints.add(d.returnToBase());
+        FlightPath pathToBase = d.returnToBase();
+        flightPathPoints.add(pathToBase);
+        writer.finish(pathToBase);
         return flightPathPoints;
     }
 
@@ -156,20 +255,10 @@ public class App
      *                         terminology.
      * @param dateStr the date on which the drone is operating, in the format DD-MM-YYYY
      */
-    private static void createGeoJsonOutput(ArrayList<LongLat> mergedFlightPath, String dateStr){
-        ArrayList<Point> points = new ArrayList<>();
-        for(LongLat loc : mergedFlightPath){
-            Point pointAsPoint = Point.fromLngLat(loc.lng, loc.lat);
-            points.add(pointAsPoint);
-        }
-        LineString line = LineString.fromLngLats(points);
-        Geometry g = (Geometry) line;
-        Feature f = Feature.fromGeometry(g);
-        FeatureCollection fc = FeatureCollection.fromFeature(f);
-        String geoJsonStr = fc.toJson();
+    private static void createGeoJsonOutput(FlightPath mergedFlightPath, String dateStr){
         try {
-            FileWriter fileWriter = new FileWriter(String.format("drone-%s.geojson", dateStr));
-            fileWriter.write(geoJsonStr);
+            BufferedWriter fileWriter = new BufferedWriter(new FileWriter(String.format("drone-%s.geojson", dateStr)));
+            GeoJsonWriting.writeFlightPath(mergedFlightPath, fileWriter);
             fileWriter.close();
         }catch (IOException e) {
             e.printStackTrace();
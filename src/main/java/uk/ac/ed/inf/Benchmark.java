@@ -0,0 +1,1096 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import com.mapbox.turf.TurfConstants;
+import com.mapbox.turf.TurfJoins;
+import com.mapbox.turf.TurfTransformation;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times the performance critical parts of the route planner against the simpler implementations they replaced.
+ *
+ * Each benchmark is run by name, and works on synthetic data generated inside the confinement area so that no web
+ * server or database is needed. Every benchmark also checks that both implementations give the same results, and
+ * exits with an error message if they do not.
+ */
+public class Benchmark {
+    /** The seed of the random number generator used to build synthetic data, fixed so that runs are comparable */
+    private static final long SEED = 2021;
+    /** The number of times each timed block is run before timing starts, to let the JIT compiler warm up */
+    private static final int WARMUP_ROUNDS = 3;
+    /** The number of times each timed block is run while being timed; the fastest is reported */
+    private static final int TIMED_ROUNDS = 5;
+    /** The number of random queries made in each round of the zone benchmarks */
+    private static final int ZONE_QUERIES = 200000;
+    /** The numbers of synthetic no-fly-zones the zone benchmarks are run with */
+    private static final int[] ZONE_COUNTS = {4, 16, 64, 256, 1024, 4096};
+    /** The cell sizes, in moves, the raster benchmark is run with */
+    private static final int[] RASTER_CELLS_PER_MOVE = {5, 15, 50};
+    /** The numbers of vertices in the random graphs the shortest path benchmark is run with */
+    private static final int[] GRAPH_SIZES = {64, 128, 256, 512};
+    /** The chance of an edge existing between each ordered pair of vertices in the random graphs */
+    private static final double EDGE_PROBABILITY = 0.3;
+    /** The numbers of vertices in the random graphs the on-demand shortest path benchmark is run with */
+    private static final int[] LARGE_GRAPH_SIZES = {256, 512, 1024};
+    /** The number of source vertices queried in the on-demand shortest path benchmark, like a day's stops */
+    private static final int QUERIED_SOURCES = 30;
+    /** The numbers of synthetic no-fly-zones the path benchmark is run with */
+    private static final int[] PATH_ZONE_COUNTS = {4, 16, 64};
+    /** The number of pairs of random points between which paths are flown in each round of the path benchmark */
+    private static final int PATH_QUERIES = 10000;
+    /** The number of random vectors whose bearings are checked by the path benchmark */
+    private static final int BEARING_QUERIES = 1000000;
+    /** The numbers of shops the pickup benchmark orders */
+    private static final int[] PICKUP_COUNTS = {2, 4, 6, 8, 12, 15, 20, 40};
+    /** The most shops whose orders are all tried by the pickup benchmark */
+    private static final int MAX_BRUTE_FORCE_PICKUPS = 8;
+    /** The number of random distance matrices ordered for each number of shops in the pickup benchmark */
+    private static final int PICKUP_MATRICES = 50;
+    /** The batch sizes the insert benchmark is run with, after inserting each record on its own */
+    private static final int[] INSERT_BATCH_SIZES = {1, 10, 100, 500, 5000};
+    /** The number of deliveries whose flight paths are inserted in each round of the insert benchmark */
+    private static final int INSERT_DELIVERIES = 20;
+    /** The number of moves in the flight path of each delivery inserted by the insert benchmark */
+    private static final int INSERT_MOVES_PER_DELIVERY = 100;
+
+    /** Default constructor to prevent instantiation */
+    private Benchmark(){}
+
+    /**
+     * Runs a benchmark.
+     *
+     * @param args the name of the benchmark to be run, one of: zones, clearance, raster, apsp, ondemand, paths, moves,
+     *             pickups, inserts; inserts also needs the port of a local Derby server, whose deliveries and
+     *             flightpath tables it replaces
+     */
+    public static void main(String[] args){
+        String name = (args.length > 0) ? args[0] : "";
+        switch(name){
+            case "zones":{
+                benchmarkZoneIndex();
+            }break;
+            case "clearance":{
+                benchmarkClearance();
+            }break;
+            case "raster":{
+                benchmarkRaster();
+            }break;
+            case "apsp":{
+                benchmarkShortestPaths();
+            }break;
+            case "ondemand":{
+                benchmarkOnDemandPaths();
+            }break;
+            case "paths":{
+                benchmarkPaths();
+            }break;
+            case "moves":{
+                benchmarkMoveCounts();
+            }break;
+            case "pickups":{
+                benchmarkPickups();
+            }break;
+            case "inserts":{
+                if(args.length < 2){
+                    System.err.println("Fatal error in Benchmark.main: the inserts benchmark needs the port of a Derby server.");
+                    System.exit(1);
+                }
+                benchmarkInserts(args[1]);
+            }break;
+            default:{
+                System.err.println("Fatal error in Benchmark.main: unknown benchmark '" + name + "'. Options are: zones, clearance, raster, apsp, ondemand, paths, moves, pickups, inserts");
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Times line intersection and point-in-zone queries with and without the spatial index of ZoneGeometry, for
+     * increasing numbers of no-fly-zones.
+     */
+    private static void benchmarkZoneIndex(){
+        System.out.println("zones\tlines\tscan ms\tindexed ms\tspeedup");
+        for(int numZones : ZONE_COUNTS){
+            Random random = new Random(SEED);
+            ZoneGeometry geometry = new ZoneGeometry(randomZones(numZones, random));
+            double[] queries = randomMoves(ZONE_QUERIES, random);
+
+            geometry.setIndexed(false);
+            int scanChecksum = runZoneQueries(geometry, queries);
+            double scanMs = time(() -> runZoneQueries(geometry, queries));
+            geometry.setIndexed(true);
+            int indexedChecksum = runZoneQueries(geometry, queries);
+            double indexedMs = time(() -> runZoneQueries(geometry, queries));
+
+            checkSame("zones", scanChecksum, indexedChecksum);
+            System.out.println(String.format("%d\t%d\t%.1f\t%.1f\t%.1fx",
+                    numZones, geometry.getNumLines(), scanMs, indexedMs, scanMs / indexedMs));
+        }
+    }
+
+    /**
+     * Makes one line intersection and one point-in-zone query for each move in a set of moves.
+     *
+     * @param geometry the zones to be queried
+     * @param moves the moves, as produced by randomMoves
+     * @return a checksum of the results of the queries, in order
+     */
+    private static int runZoneQueries(ZoneGeometry geometry, double[] moves){
+        int checksum = 0;
+        for(int i = 0; i < moves.length; i += 4){
+            checksum = checksum(checksum, geometry.lineIntersects(moves[i], moves[i+1], moves[i+2], moves[i+3]));
+            checksum = checksum(checksum, geometry.containsPoint(moves[i+2], moves[i+3]));
+        }
+        return checksum;
+    }
+
+    /**
+     * Times the exact clearance check of ZoneGeometry.pointWithinDistance against the 16-vertex Turf circle it
+     * replaced, for increasing numbers of no-fly-zones.
+     *
+     * The 2 checks are not expected to agree everywhere; the circle misses zones poking between its vertices, and
+     * being built on a sphere it is wider in longitude than in latitude. The number of points on which they disagree
+     * in each direction is reported.
+     */
+    private static void benchmarkClearance(){
+        double clearance = LongLat.MOVE_DISTANCE/2;
+        System.out.println("zones	circle ms	exact ms	speedup	only circle	only exact");
+        for(int numZones : ZONE_COUNTS){
+            Random random = new Random(SEED);
+            ArrayList<Polygon> zones = randomZones(numZones, random);
+            ZoneGeometry geometry = new ZoneGeometry(zones);
+            double[] points = randomMoves(ZONE_QUERIES / 100, random);
+
+            double circleMs = time(() -> countCircleHits(zones, points));
+            double exactMs = time(() -> countExactHits(geometry, points, clearance));
+            int onlyCircle = 0;
+            int onlyExact = 0;
+            for(int i = 0; i < points.length; i += 4){
+                boolean circleHit = circleHitsZones(zones, points[i], points[i+1]);
+                boolean exactHit = geometry.pointWithinDistance(points[i], points[i+1], clearance);
+                onlyCircle += (circleHit && !exactHit) ? 1 : 0;
+                onlyExact += (exactHit && !circleHit) ? 1 : 0;
+            }
+            System.out.println(String.format("%d\t%.1f\t%.1f\t%.1fx\t%d\t%d",
+                    numZones, circleMs, exactMs, circleMs / exactMs, onlyCircle, onlyExact));
+        }
+    }
+
+    /**
+     * Times the point queries of NoFlyZones with and without a ClearanceRaster, for increasing numbers of no-fly-zones
+     * and a range of raster resolutions.
+     */
+    private static void benchmarkRaster(){
+        System.out.println("zones\tcell\tbytes\tbuild ms\tknown\texact ms\traster ms\tspeedup");
+        for(int numZones : ZONE_COUNTS){
+            for(int cellsPerMove : RASTER_CELLS_PER_MOVE){
+                Random random = new Random(SEED);
+                NoFlyZones zones = new NoFlyZones(randomZones(numZones, random));
+                double[] points = randomMoves(ZONE_QUERIES, random);
+
+                zones.clearRaster();
+                int exactChecksum = runPointQueries(zones, points);
+                double exactMs = time(() -> runPointQueries(zones, points));
+                long buildStart = System.nanoTime();
+                zones.buildRaster(LongLat.MOVE_DISTANCE / cellsPerMove, NoFlyZones.DEFAULT_RASTER_MAX_BYTES * 16);
+                double buildMs = (System.nanoTime() - buildStart) / 1e6;
+                int rasterChecksum = runPointQueries(zones, points);
+                double rasterMs = time(() -> runPointQueries(zones, points));
+
+                checkSame("raster", exactChecksum, rasterChecksum);
+                ClearanceRaster raster = zones.getRaster();
+                System.out.println(String.format("%d\t1/%d\t%d\t%.1f\t%.0f%%\t%.1f\t%.1f\t%.1fx",
+                        numZones, cellsPerMove, raster.getSizeInBytes(), buildMs, 100 * raster.getFractionKnown(),
+                        exactMs, rasterMs, exactMs / rasterMs));
+            }
+        }
+    }
+
+    /**
+     * Times finding and reading back the shortest paths between every pair of vertices of random graphs with
+     * FloydWarshall, against the JGraphT FloydWarshallShortestPaths it replaced, for increasing numbers of vertices.
+     *
+     * The build time covers finding every distance; the path time covers rebuilding the path between every pair of
+     * vertices. Paths are not compared vertex by vertex, since ties between equally short paths may be broken
+     * differently, but every path found by FloydWarshall is checked to be as short as its distance.
+     */
+    private static void benchmarkShortestPaths(){
+        System.out.println("vertices\tedges\tjgrapht build ms\tbuild ms\tspeedup\tjgrapht paths ms\tpaths ms\tspeedup");
+        for(int numVertices : GRAPH_SIZES){
+            Random random = new Random(SEED);
+            int[] weights = randomWeights(numVertices, random);
+            int[] edgeStarts = new int[numVertices + 1];
+            int[] edgeTargets = new int[weights.length];
+            int[] edgeWeights = new int[weights.length];
+            SimpleDirectedWeightedGraph<Integer, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<>(DefaultWeightedEdge.class);
+            for(int v = 0; v < numVertices; v++){
+                graph.addVertex(v);
+            }
+            int numEdges = 0;
+            for(int from = 0; from < numVertices; from++){
+                for(int to = 0; to < numVertices; to++){
+                    if(weights[from * numVertices + to] > 0){
+                        edgeTargets[numEdges] = to;
+                        edgeWeights[numEdges] = weights[from * numVertices + to];
+                        graph.setEdgeWeight(graph.addEdge(from, to), edgeWeights[numEdges]);
+                        numEdges++;
+                    }
+                }
+                edgeStarts[from+1] = numEdges;
+            }
+            int edges = numEdges;
+
+            double jgraphtBuildMs = time(() -> sumDistances(new FloydWarshallShortestPaths<>(graph), numVertices));
+            double buildMs = time(() -> sumDistances(new FloydWarshall(numVertices, edgeStarts, edgeTargets, Arrays.copyOf(edgeWeights, edges), LocationGraph.DEFAULT_PARALLELISM)));
+            FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> jgrapht = new FloydWarshallShortestPaths<>(graph);
+            FloydWarshall floydWarshall = new FloydWarshall(numVertices, edgeStarts, edgeTargets, edgeWeights, LocationGraph.DEFAULT_PARALLELISM);
+            checkSame("apsp", sumDistances(jgrapht, numVertices), sumDistances(floydWarshall));
+            checkPathWeights(floydWarshall, weights);
+
+            double jgraphtPathsMs = time(() -> countPathVertices(jgrapht, numVertices));
+            double pathsMs = time(() -> countPathVertices(floydWarshall));
+            System.out.println(String.format("%d\t%d\t%.1f\t%.1f\t%.1fx\t%.1f\t%.1f\t%.1fx", numVertices, edges,
+                    jgraphtBuildMs, buildMs, jgraphtBuildMs / buildMs, jgraphtPathsMs, pathsMs, jgraphtPathsMs / pathsMs));
+        }
+    }
+
+    /**
+     * Times answering the distance queries from a few sources to every vertex of random graphs with
+     * DijkstraShortestPaths, against finding the paths between every pair of vertices with FloydWarshall first, for
+     * increasing numbers of vertices. Each timed round starts with nothing cached.
+     */
+    private static void benchmarkOnDemandPaths(){
+        System.out.println("vertices\tedges\tall pairs ms\ton demand ms\tspeedup\tall pairs bytes\ton demand bytes");
+        for(int numVertices : LARGE_GRAPH_SIZES){
+            Random random = new Random(SEED);
+            int[] weights = randomWeights(numVertices, random);
+            int[] edgeStarts = new int[numVertices + 1];
+            int[] edgeTargets = new int[weights.length];
+            int[] edgeWeights = new int[weights.length];
+            int numEdges = 0;
+            for(int from = 0; from < numVertices; from++){
+                for(int to = 0; to < numVertices; to++){
+                    if(weights[from * numVertices + to] > 0){
+                        edgeTargets[numEdges] = to;
+                        edgeWeights[numEdges] = weights[from * numVertices + to];
+                        numEdges++;
+                    }
+                }
+                edgeStarts[from+1] = numEdges;
+            }
+            int[] sources = new int[QUERIED_SOURCES];
+            for(int i = 0; i < sources.length; i++){
+                sources[i] = random.nextInt(numVertices);
+            }
+
+            double allPairsMs = time(() -> sumDistances(new FloydWarshall(numVertices, edgeStarts, edgeTargets, edgeWeights, LocationGraph.DEFAULT_PARALLELISM), sources));
+            double onDemandMs = time(() -> sumDistances(new DijkstraShortestPaths(numVertices, edgeStarts, edgeTargets, edgeWeights, DijkstraShortestPaths.DEFAULT_MAX_CACHE_BYTES), sources));
+            checkSame("ondemand",
+                    sumDistances(new FloydWarshall(numVertices, edgeStarts, edgeTargets, edgeWeights, LocationGraph.DEFAULT_PARALLELISM), sources),
+                    sumDistances(new DijkstraShortestPaths(numVertices, edgeStarts, edgeTargets, edgeWeights, DijkstraShortestPaths.DEFAULT_MAX_CACHE_BYTES), sources));
+            System.out.println(String.format("%d\t%d\t%.1f\t%.1f\t%.1fx\t%d\t%d", numVertices, numEdges, allPairsMs,
+                    onDemandMs, allPairsMs / onDemandMs, 8L * numVertices * numVertices, 8L * numVertices * QUERIED_SOURCES));
+        }
+    }
+
+    /**
+     * Times LongLat.getPathTo against the original loop it replaced, which built a LongLat for every move and found
+     * each move with Math.atan2, Math.cos and Math.sin, for increasing numbers of no-fly-zones.
+     *
+     * Both must visit exactly the same points. The bearings found by LongLat.getBearing are also checked against
+     * Math.atan2 for random vectors, half of them placed just either side of the boundaries between legal bearings.
+     */
+    private static void benchmarkPaths(){
+        Random bearingRandom = new Random(SEED);
+        for(int i = 0; i < BEARING_QUERIES; i++){
+            double radians;
+            if(i % 2 == 0){
+                radians = 2 * Math.PI * bearingRandom.nextDouble();
+            } else {
+                double boundary = LongLat.ANGLE_SCALE * (bearingRandom.nextInt(36) + 0.5);
+                radians = Math.toRadians(boundary + 1e-3 * (bearingRandom.nextDouble() - 0.5));
+            }
+            double length = LongLat.MOVE_DISTANCE * 100 * bearingRandom.nextDouble();
+            double dLng = length * Math.cos(radians);
+            double dLat = length * Math.sin(radians);
+            checkSame("paths", legacyBearing(0, 0, dLng, dLat), LongLat.getBearing(0, 0, dLng, dLat));
+        }
+
+        System.out.println("zones\tmoves\tlegacy ms\tstepped ms\tspeedup");
+        for(int numZones : PATH_ZONE_COUNTS){
+            Random random = new Random(SEED);
+            NoFlyZones zones = new NoFlyZones(randomZones(numZones, random));
+            LongLat[] points = new LongLat[2 * PATH_QUERIES];
+            for(int i = 0; i < points.length; i++){
+                // getPathTo treats an end point inside a zone as a fatal error.
+                do {
+                    points[i] = randomPoint(random);
+                } while(zones.pointInZones(points[i]));
+            }
+
+            long legacyChecksum = flyLegacyPaths(zones, points);
+            double legacyMs = time(() -> flyLegacyPaths(zones, points));
+            long steppedChecksum = flySteppedPaths(zones, points);
+            double steppedMs = time(() -> flySteppedPaths(zones, points));
+
+            checkSame("paths", legacyChecksum, steppedChecksum);
+            int numMoves = 0;
+            for(int i = 0; i < points.length; i += 2){
+                numMoves += Math.max(0, points[i].getPathTo(points[i+1], zones).size() - 1);
+            }
+            System.out.println(String.format("%d\t%d\t%.1f\t%.1f\t%.1fx",
+                    numZones, numMoves, legacyMs, steppedMs, legacyMs / steppedMs));
+        }
+    }
+
+    /**
+     * Times LongLat.countMovesTo, which sweeps a single corridor against the zones, against counting the points of
+     * the path from LongLat.getPathTo, which checks every move, for increasing numbers of no-fly-zones.
+     *
+     * Both must give the same number of moves between every pair of points. The number of pairs the sweep found
+     * clear, blocked or ambiguous is also reported.
+     */
+    private static void benchmarkMoveCounts(){
+        System.out.println("zones\tpairs\tpaths\tclear\tblocked\tambiguous\tflown ms\tcounted ms\tspeedup");
+        for(int numZones : PATH_ZONE_COUNTS){
+            Random random = new Random(SEED);
+            NoFlyZones zones = new NoFlyZones(randomZones(numZones, random));
+            LongLat[] points = new LongLat[2 * PATH_QUERIES];
+            for(int i = 0; i < points.length; i++){
+                // countMovesTo treats an end point inside a zone as a fatal error.
+                do {
+                    points[i] = randomPoint(random);
+                } while(zones.pointInZones(points[i]));
+            }
+
+            long flownChecksum = countFlownMoves(zones, points);
+            double flownMs = time(() -> countFlownMoves(zones, points));
+            long countedChecksum = countMoves(zones, points, null);
+            double countedMs = time(() -> countMoves(zones, points, null));
+
+            checkSame("moves", flownChecksum, countedChecksum);
+            int numPaths = 0;
+            for(int i = 0; i < points.length; i += 2){
+                numPaths += (points[i].countMovesTo(points[i+1], zones) != LongLat.NO_PATH) ? 1 : 0;
+            }
+            int[] pathClassCounts = new int[PathClass.values().length];
+            countMoves(zones, points, pathClassCounts);
+            System.out.println(String.format("%d\t%d\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%.1fx",
+                    numZones, PATH_QUERIES, numPaths, pathClassCounts[PathClass.CLEAR.ordinal()],
+                    pathClassCounts[PathClass.BLOCKED.ordinal()], pathClassCounts[PathClass.AMBIGUOUS.ordinal()],
+                    flownMs, countedMs, flownMs / countedMs));
+        }
+    }
+
+    /**
+     * Counts the moves between pairs of points by flying LongLat.getPathTo.
+     *
+     * @param zones the no-fly-zones the paths must avoid
+     * @param points the pairs of points, each start followed by its end
+     * @return a checksum of the number of moves between each pair, in order
+     */
+    private static long countFlownMoves(NoFlyZones zones, LongLat[] points){
+        long checksum = 0;
+        for(int i = 0; i < points.length; i += 2){
+            checksum = 31 * checksum + (points[i].getPathTo(points[i+1], zones).size() - 1);
+        }
+        return checksum;
+    }
+
+    /**
+     * Counts the moves between pairs of points with LongLat.countMovesTo.
+     *
+     * @param zones the no-fly-zones the paths must avoid
+     * @param points the pairs of points, each start followed by its end
+     * @param pathClassCounts the array in which the number of pairs sorted into each PathClass is counted, or null
+     * @return a checksum of the number of moves between each pair, in order
+     */
+    private static long countMoves(NoFlyZones zones, LongLat[] points, int[] pathClassCounts){
+        long checksum = 0;
+        for(int i = 0; i < points.length; i += 2){
+            checksum = 31 * checksum + points[i].countMovesTo(points[i+1], zones, pathClassCounts);
+        }
+        return checksum;
+    }
+
+    /**
+     * Flies LongLat.getPathTo between pairs of points.
+     *
+     * @param zones the no-fly-zones the paths must avoid
+     * @param points the pairs of points, each start followed by its end
+     * @return a checksum of every point visited, in order
+     */
+    private static long flySteppedPaths(NoFlyZones zones, LongLat[] points){
+        long checksum = 0;
+        for(int i = 0; i < points.length; i += 2){
+            FlightPath path = points[i].getPathTo(points[i+1], zones);
+            for(int p = 0; p < path.size(); p++){
+                checksum = 31 * checksum + Double.doubleToLongBits(path.getLng(p));
+                checksum = 31 * checksum + Double.doubleToLongBits(path.getLat(p));
+            }
+            checksum = 31 * checksum + path.size();
+        }
+        return checksum;
+    }
+
+    /**
+     * Flies the original path finding loop between pairs of points.
+     *
+     * @param zones the no-fly-zones the paths must avoid
+     * @param points the pairs of points, each start followed by its end
+     * @return a checksum of every point visited, in order
+     */
+    private static long flyLegacyPaths(NoFlyZones zones, LongLat[] points){
+        long checksum = 0;
+        for(int i = 0; i < points.length; i += 2){
+            List<LongLat> path = legacyPath(points[i], points[i+1], zones);
+            for(LongLat point : path){
+                checksum = 31 * checksum + Double.doubleToLongBits(point.lng);
+                checksum = 31 * checksum + Double.doubleToLongBits(point.lat);
+            }
+            checksum = 31 * checksum + path.size();
+        }
+        return checksum;
+    }
+
+    /**
+     * The original path finding loop of LongLat.getPathTo.
+     *
+     * @param start the point at which the path starts
+     * @param end the point the path must end 'close to'
+     * @param zones the no-fly-zones the path must avoid
+     * @return the points along the path, or an empty list if there is no legal straight path
+     */
+    private static List<LongLat> legacyPath(LongLat start, LongLat end, NoFlyZones zones){
+        List<LongLat> path = new ArrayList<>();
+        LongLat currPos = new LongLat(start.lng, start.lat);
+        path.add(currPos);
+        while(!(currPos.distanceTo(end) < LongLat.DISTANCE_TOLERANCE)){
+            int bearing = legacyBearing(currPos.lng, currPos.lat, end.lng, end.lat);
+            LongLat nextPos = new LongLat(currPos.lng + LongLat.MOVE_DISTANCE * Math.cos(Math.toRadians(bearing)),
+                    currPos.lat + LongLat.MOVE_DISTANCE * Math.sin(Math.toRadians(bearing)));
+            if(nextPos.isConfined() && !(zones.lineIntersectsZones(currPos, nextPos)) && !(zones.pointTooCloseToZones(nextPos))){
+                path.add(nextPos);
+                currPos = nextPos;
+            } else {
+                return new ArrayList<>();
+            }
+        }
+        return path;
+    }
+
+    /**
+     * The original bearing calculation of LongLat.getBearing, with Math.atan2.
+     *
+     * @param fromLng the longitude of the point from which the bearing is calculated
+     * @param fromLat the latitude of the point from which the bearing is calculated
+     * @param toLng the longitude of the point to which the bearing is calculated
+     * @param toLat the latitude of the point to which the bearing is calculated
+     * @return the bearing between the points, or JUNK_ANGLE if they are the same point
+     */
+    private static int legacyBearing(double fromLng, double fromLat, double toLng, double toLat){
+        if((fromLng == toLng) && (fromLat == toLat)){
+            return LongLat.JUNK_ANGLE;
+        }
+        float angle = (float) Math.toDegrees(Math.atan2(toLat - fromLat, toLng - fromLng));
+        angle = Math.round(angle / LongLat.ANGLE_SCALE) * LongLat.ANGLE_SCALE;
+        if(angle < 0){
+            angle += 360;
+        } else if(angle == 360){
+            angle = 0;
+        }
+        return (int) angle;
+    }
+
+    /**
+     * Times the ordering of a delivery's shops by PickupRouting against trying every order, for increasing numbers of
+     * shops.
+     *
+     * Held-Karp must find paths as short as the best of every order, which is only tried for up to
+     * MAX_BRUTE_FORCE_PICKUPS shops. The heuristic used above MAX_EXACT_PICKUPS is also timed, with how much longer
+     * its paths are than the exact ones where those can be found.
+     */
+    private static void benchmarkPickups(){
+        System.out.println("pickups\tmatrices\tevery order ms\theld-karp ms\theuristic ms\theuristic excess");
+        for(int numPickups : PICKUP_COUNTS){
+            Random random = new Random(SEED);
+            int[][][] matrices = new int[PICKUP_MATRICES][][];
+            for(int m = 0; m < matrices.length; m++){
+                matrices[m] = randomDistances(numPickups + 2, random);
+            }
+
+            String bruteMs = "-";
+            if(numPickups <= MAX_BRUTE_FORCE_PICKUPS){
+                checkSame("pickups", sumBruteForceLengths(matrices), sumOrderLengths(matrices, true));
+                bruteMs = String.format("%.1f", time(() -> sumBruteForceLengths(matrices)));
+            }
+            String exactMs = "-";
+            String excess = "-";
+            long heuristicLength = sumOrderLengths(matrices, false);
+            if(numPickups <= PickupRouting.MAX_EXACT_PICKUPS){
+                long exactLength = sumOrderLengths(matrices, true);
+                exactMs = String.format("%.1f", time(() -> sumOrderLengths(matrices, true)));
+                excess = String.format("%.2f%%", 100.0 * (heuristicLength - exactLength) / exactLength);
+            }
+            double heuristicMs = time(() -> sumOrderLengths(matrices, false));
+            System.out.println(String.format("%d\t%d\t%s\t%s\t%.1f\t%s",
+                    numPickups, PICKUP_MATRICES, bruteMs, exactMs, heuristicMs, excess));
+        }
+    }
+
+    /**
+     * Builds a random distance matrix between stops scattered over a square, with the distances rounded to whole
+     * moves and each lengthened a little at random so that they differ in each direction.
+     *
+     * @param numStops the number of stops
+     * @param random the random number generator to be used
+     * @return the distance matrix
+     */
+    private static int[][] randomDistances(int numStops, Random random){
+        double[] xs = new double[numStops];
+        double[] ys = new double[numStops];
+        for(int i = 0; i < numStops; i++){
+            xs[i] = random.nextDouble() * 50;
+            ys[i] = random.nextDouble() * 50;
+        }
+        int[][] dist = new int[numStops][numStops];
+        for(int i = 0; i < numStops; i++){
+            for(int j = 0; j < numStops; j++){
+                dist[i][j] = (i == j) ? 0 : (int) Math.round(Math.hypot(xs[i] - xs[j], ys[i] - ys[j])) + random.nextInt(3);
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Orders the shops of each distance matrix with PickupRouting.
+     *
+     * @param matrices the distance matrices
+     * @param exact true if the shops are to be ordered exactly, false if by the heuristic
+     * @return the sum of the lengths of the paths found
+     */
+    private static long sumOrderLengths(int[][][] matrices, boolean exact){
+        long total = 0;
+        for(int[][] dist : matrices){
+            int[] order = exact ? PickupRouting.findExactOrder(dist) : PickupRouting.findHeuristicOrder(dist);
+            total += PickupRouting.getLength(dist, order);
+        }
+        return total;
+    }
+
+    /**
+     * Orders the shops of each distance matrix by trying every order.
+     *
+     * @param matrices the distance matrices
+     * @return the sum of the lengths of the shortest paths found
+     */
+    private static long sumBruteForceLengths(int[][][] matrices){
+        long total = 0;
+        for(int[][] dist : matrices){
+            int[] order = new int[dist.length - 2];
+            for(int i = 0; i < order.length; i++){
+                order[i] = i + 1;
+            }
+            total += shortestPermutation(dist, order, 0);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the length of the shortest path through the shops of a distance matrix over every order of those from a
+     * given index of an order onwards, permuting them in place and restoring them before returning.
+     *
+     * @param dist the distance matrix
+     * @param order the order, whose shops before first are fixed
+     * @param first the index of the first shop to be permuted
+     * @return the length of the shortest path found
+     */
+    private static int shortestPermutation(int[][] dist, int[] order, int first){
+        if(first == order.length){
+            return PickupRouting.getLength(dist, order);
+        }
+        int shortest = Integer.MAX_VALUE;
+        for(int i = first; i < order.length; i++){
+            int pickup = order[first];
+            order[first] = order[i];
+            order[i] = pickup;
+            shortest = Math.min(shortest, shortestPermutation(dist, order, first + 1));
+            order[i] = order[first];
+            order[first] = pickup;
+        }
+        return shortest;
+    }
+
+    /**
+     * Times inserting the flight paths of a day's deliveries into a local Derby database one record at a time, each
+     * committed on its own, in batches of increasing size in one transaction, and compactly, one record per
+     * delivery, reporting the moves inserted per second. The moves read back each time must match those inserted
+     * exactly, coordinates included.
+     *
+     * @param port the port of the Derby server
+     */
+    private static void benchmarkInserts(String port){
+        Database.setJdcbString(port);
+        Random random = new Random(SEED);
+        ArrayList<FlightPath> flightPath = new ArrayList<>();
+        ArrayList<Delivery> deliveries = new ArrayList<>();
+        for(int i = 0; i < INSERT_DELIVERIES; i++){
+            flightPath.add(randomFlightPath(INSERT_MOVES_PER_DELIVERY, random));
+            deliveries.add(new Delivery(new FlightPath(), new Order(String.format("%08d", i), "s0000000",
+                    "benchmark.flight.path", new ArrayList<>(), 0)));
+        }
+
+        System.out.println("batch\trows\tms\trows/sec\tspeedup");
+        String expected = summariseFlightPath(flightPath, deliveries);
+        Database.setBatchSize(Database.UNBATCHED);
+        insertFlightPathsQuietly(flightPath, deliveries);
+        checkSame("inserts", expected, summariseFlightPath());
+        double unbatchedMs = time(() -> insertFlightPathsQuietly(flightPath, deliveries));
+        long rows = Long.parseLong(expected.split(" ")[0]);
+        System.out.println(String.format("none\t%d\t%.1f\t%.0f\t1.0x", rows, unbatchedMs, rows / unbatchedMs * 1000));
+        for(int batchSize : INSERT_BATCH_SIZES){
+            Database.setBatchSize(batchSize);
+            insertFlightPathsQuietly(flightPath, deliveries);
+            checkSame("inserts", expected, summariseFlightPath());
+            double batchedMs = time(() -> insertFlightPathsQuietly(flightPath, deliveries));
+            System.out.println(String.format("%d\t%d\t%.1f\t%.0f\t%.1fx",
+                    batchSize, rows, batchedMs, rows / batchedMs * 1000, unbatchedMs / batchedMs));
+        }
+        Database.setBatchSize(Database.DEFAULT_BATCH_SIZE);
+        Database.setFlightPathSchema(FlightPathSchema.COMPACT);
+        insertFlightPathsQuietly(flightPath, deliveries);
+        checkSame("inserts", expected, summariseFlightPath());
+        double compactMs = time(() -> insertFlightPathsQuietly(flightPath, deliveries));
+        System.out.println(String.format("compact\t%d\t%.1f\t%.0f\t%.1fx",
+                rows, compactMs, rows / compactMs * 1000, unbatchedMs / compactMs));
+        Database.setFlightPathSchema(FlightPathSchema.ROWS);
+        Database.close();
+    }
+
+    /**
+     * Builds a random flight path, as the drone would fly it, from a random point inside the confinement area.
+     *
+     * @param numMoves the number of moves in the path
+     * @param random the random number generator to be used
+     * @return the flight path
+     */
+    private static FlightPath randomFlightPath(int numMoves, Random random){
+        FlightPath path = new FlightPath(numMoves + 1);
+        LongLat position = randomPoint(random);
+        path.add(position.lng, position.lat);
+        for(int i = 0; i < numMoves; i++){
+            position = position.nextPosition(LongLat.ANGLE_SCALE * random.nextInt(LongLat.MAX_ANGLE / LongLat.ANGLE_SCALE + 1));
+            path.add(position.lng, position.lat);
+        }
+        return path;
+    }
+
+    /**
+     * Inserts flight paths into the flightpath table without printing each move.
+     *
+     * @param flightPath the flight paths, one for each delivery
+     * @param deliveries the deliveries whose flight paths are inserted
+     */
+    private static void insertFlightPathsQuietly(ArrayList<FlightPath> flightPath, ArrayList<Delivery> deliveries){
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Database.insertFlightPaths(flightPath, deliveries);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * Reads back the flight path stored in the database, in whichever schema it is stored, and summarises it.
+     *
+     * @return the summary of the records read, as given by summariseRecords
+     */
+    private static String summariseFlightPath(){
+        return summariseRecords(Database.readFlightPath());
+    }
+
+    /**
+     * Summarises the records Database.insertFlightPaths stores for some flight paths, ending at base, without
+     * inserting them.
+     *
+     * @param flightPath the flight paths, one for each delivery
+     * @param deliveries the deliveries whose flight paths they are
+     * @return the summary of the records, as given by summariseRecords
+     */
+    private static String summariseFlightPath(ArrayList<FlightPath> flightPath, ArrayList<Delivery> deliveries){
+        ArrayList<FlightPathRecord> records = new ArrayList<>();
+        for(int i = 0; i < flightPath.size(); i++){
+            FlightPath path = flightPath.get(i);
+            String orderNo = deliveries.get(i).orderDelivered.id;
+            for(int j = 0; j < path.size() - 1; j++){
+                records.add(new FlightPathRecord(orderNo, path.getLng(j), path.getLat(j),
+                        LongLat.getBearing(path.getLng(j), path.getLat(j), path.getLng(j+1), path.getLat(j+1)),
+                        path.getLng(j+1), path.getLat(j+1)));
+            }
+            if(i < flightPath.size() - 1){
+                int last = path.size() - 1;
+                records.add(new FlightPathRecord(orderNo, path.getLng(last), path.getLat(last), LongLat.JUNK_ANGLE,
+                        path.getLng(last), path.getLat(last)));
+            }
+        }
+        return summariseRecords(records);
+    }
+
+    /**
+     * Summarises flight path records by their number and a checksum of every field, coordinates bit for bit, which
+     * does not depend on the order of the records, as the flightpath table keeps none.
+     *
+     * @param records the records
+     * @return the number of records and their checksum, separated by a space
+     */
+    private static String summariseRecords(ArrayList<FlightPathRecord> records){
+        long checksum = 0;
+        for(FlightPathRecord record : records){
+            long hash = record.orderNo.trim().hashCode();
+            hash = 31 * hash + Double.hashCode(record.fromLongitude);
+            hash = 31 * hash + Double.hashCode(record.fromLatitude);
+            hash = 31 * hash + record.angle;
+            hash = 31 * hash + Double.hashCode(record.toLongitude);
+            hash = 31 * hash + Double.hashCode(record.toLatitude);
+            checksum += hash * 0x9E3779B97F4A7C15L;
+        }
+        return records.size() + " " + checksum;
+    }
+
+    /**
+     * Adds up the distances from some source vertices to every vertex connected to them by a path.
+     *
+     * @param paths the shortest paths
+     * @param sources the vertices at the start of the paths
+     * @return the sum of the distances
+     */
+    private static long sumDistances(ShortestPaths paths, int[] sources){
+        long sum = 0;
+        for(int from : sources){
+            for(int to = 0; to < paths.getNumVertices(); to++){
+                int distance = paths.getDistance(from, to);
+                sum += (distance == ShortestPaths.NO_PATH) ? 0 : distance;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Builds the weights of the edges of a random directed graph, like those between w3w addresses.
+     *
+     * @param numVertices the number of vertices in the graph
+     * @param random the random number generator to be used
+     * @return the weight of the edge between each ordered pair of vertices, row after row, or 0 where there is none
+     */
+    private static int[] randomWeights(int numVertices, Random random){
+        int[] weights = new int[numVertices * numVertices];
+        for(int from = 0; from < numVertices; from++){
+            for(int to = 0; to < numVertices; to++){
+                if(from != to && random.nextDouble() < EDGE_PROBABILITY){
+                    weights[from * numVertices + to] = 1 + random.nextInt(100);
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Adds up the distances between every pair of vertices connected by a path, as found by JGraphT.
+     *
+     * @param paths the shortest paths
+     * @param numVertices the number of vertices in the graph
+     * @return the sum of the distances
+     */
+    private static long sumDistances(FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths, int numVertices){
+        long sum = 0;
+        for(int from = 0; from < numVertices; from++){
+            for(int to = 0; to < numVertices; to++){
+                double distance = paths.getPathWeight(from, to);
+                sum += Double.isInfinite(distance) ? 0 : (long) distance;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Adds up the distances between every pair of vertices connected by a path, as found by FloydWarshall.
+     *
+     * @param paths the shortest paths
+     * @return the sum of the distances
+     */
+    private static long sumDistances(FloydWarshall paths){
+        long sum = 0;
+        for(int from = 0; from < paths.getNumVertices(); from++){
+            for(int to = 0; to < paths.getNumVertices(); to++){
+                int distance = paths.getDistance(from, to);
+                sum += (distance == ShortestPaths.NO_PATH) ? 0 : distance;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the vertices along the shortest paths between every pair of vertices, as rebuilt by JGraphT.
+     *
+     * The count may differ from that of FloydWarshall where there are ties between equally short paths.
+     *
+     * @param paths the shortest paths
+     * @param numVertices the number of vertices in the graph
+     * @return the total number of vertices along the paths
+     */
+    private static long countPathVertices(FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths, int numVertices){
+        long count = 0;
+        for(int from = 0; from < numVertices; from++){
+            for(int to = 0; to < numVertices; to++){
+                GraphPath<Integer, DefaultWeightedEdge> path = paths.getPath(from, to);
+                count += (path == null) ? 0 : path.getVertexList().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the vertices along the shortest paths between every pair of vertices, as rebuilt by FloydWarshall.
+     *
+     * @param paths the shortest paths
+     * @return the total number of vertices along the paths
+     */
+    private static long countPathVertices(FloydWarshall paths){
+        int[] path = new int[paths.getNumVertices()];
+        long count = 0;
+        for(int from = 0; from < paths.getNumVertices(); from++){
+            for(int to = 0; to < paths.getNumVertices(); to++){
+                count += paths.getPath(from, to, path);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that the weight of every path rebuilt by FloydWarshall is its distance, exiting the application if not.
+     *
+     * @param paths the shortest paths
+     * @param weights the weight of the edge between each ordered pair of vertices, as produced by randomWeights
+     */
+    private static void checkPathWeights(FloydWarshall paths, int[] weights){
+        int numVertices = paths.getNumVertices();
+        int[] path = new int[numVertices];
+        for(int from = 0; from < numVertices; from++){
+            for(int to = 0; to < numVertices; to++){
+                int length = paths.getPath(from, to, path);
+                int weight = (length == 0) ? ShortestPaths.NO_PATH : 0;
+                for(int i = 0; i + 1 < length; i++){
+                    weight += weights[path[i] * numVertices + path[i+1]];
+                }
+                checkSame("apsp", paths.getDistance(from, to), weight);
+            }
+        }
+    }
+
+    /**
+     * Makes one point-in-zone and one 'too close' query for the end point of each move in a set of moves.
+     *
+     * @param zones the zones to be queried
+     * @param moves the moves, as produced by randomMoves
+     * @return a checksum of the results of the queries, in order
+     */
+    private static int runPointQueries(NoFlyZones zones, double[] moves){
+        int checksum = 0;
+        for(int i = 0; i < moves.length; i += 4){
+            checksum = checksum(checksum, zones.pointInZones(moves[i+2], moves[i+3]));
+            checksum = checksum(checksum, zones.pointTooCloseToZones(moves[i+2], moves[i+3]));
+        }
+        return checksum;
+    }
+
+    /**
+     * Counts the start points of a set of moves which are 'too close' to the zones by the Turf circle check.
+     *
+     * @param zones the zones
+     * @param moves the moves, as produced by randomMoves
+     * @return the number of start points too close to the zones
+     */
+    private static int countCircleHits(List<Polygon> zones, double[] moves){
+        int hits = 0;
+        for(int i = 0; i < moves.length; i += 4){
+            hits += circleHitsZones(zones, moves[i], moves[i+1]) ? 1 : 0;
+        }
+        return hits;
+    }
+
+    /**
+     * Counts the start points of a set of moves which are 'too close' to the zones by the exact check.
+     *
+     * @param geometry the compiled zones
+     * @param moves the moves, as produced by randomMoves
+     * @param clearance the distance from the zones within which a point is too close
+     * @return the number of start points too close to the zones
+     */
+    private static int countExactHits(ZoneGeometry geometry, double[] moves, double clearance){
+        int hits = 0;
+        for(int i = 0; i < moves.length; i += 4){
+            hits += geometry.pointWithinDistance(moves[i], moves[i+1], clearance) ? 1 : 0;
+        }
+        return hits;
+    }
+
+    /**
+     * The original 'too close' check; whether any vertex of a 16-sided Turf circle of radius half a move around a
+     * point lies inside a zone.
+     *
+     * @param zones the zones
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return true if any vertex of the circle lies in a zone, false otherwise
+     */
+    private static boolean circleHitsZones(List<Polygon> zones, double lng, double lat){
+        Polygon circle = TurfTransformation.circle(Point.fromLngLat(lng, lat), LongLat.MOVE_DISTANCE/2, 16, TurfConstants.UNIT_DEGREES);
+        for(Point vertex : circle.coordinates().get(0)){
+            for(Polygon zone : zones){
+                if(TurfJoins.inside(vertex, zone)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds random polygons inside the confinement area to stand in for no-fly-zones.
+     *
+     * The polygons shrink as their number grows so that they cover a similar fraction of the area. Every fourth
+     * polygon has a hole.
+     *
+     * @param numZones the number of polygons to be built
+     * @param random the random number generator to be used
+     * @return the polygons
+     */
+    public static ArrayList<Polygon> randomZones(int numZones, Random random){
+        double width = LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE;
+        double height = LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE;
+        double maxRadius = 0.4 * Math.min(width, height) / Math.sqrt(numZones);
+        ArrayList<Polygon> zones = new ArrayList<>();
+        for(int z = 0; z < numZones; z++){
+            double centreLng = LongLat.MIN_LONGITUDE + random.nextDouble() * width;
+            double centreLat = LongLat.MIN_LATITUDE + random.nextDouble() * height;
+            double radius = maxRadius * (0.5 + 0.5 * random.nextDouble());
+            List<List<Point>> rings = new ArrayList<>();
+            rings.add(randomRing(centreLng, centreLat, radius, 4 + random.nextInt(8), random));
+            if(z % 4 == 0){
+                rings.add(randomRing(centreLng, centreLat, radius / 5, 5, random));
+            }
+            zones.add(Polygon.fromLngLats(rings));
+        }
+        return zones;
+    }
+
+    /**
+     * Builds a closed ring of points around a centre, with the distance of each from the centre varying randomly.
+     *
+     * @param centreLng the longitude of the centre
+     * @param centreLat the latitude of the centre
+     * @param radius the greatest distance of any point from the centre
+     * @param numPoints the number of distinct points in the ring
+     * @param random the random number generator to be used
+     * @return the ring, whose last point is the same as its first
+     */
+    private static List<Point> randomRing(double centreLng, double centreLat, double radius, int numPoints, Random random){
+        List<Point> ring = new ArrayList<>();
+        for(int i = 0; i < numPoints; i++){
+            double angle = 2 * Math.PI * i / numPoints;
+            double distance = radius * (0.6 + 0.4 * random.nextDouble());
+            ring.add(Point.fromLngLat(centreLng + distance * Math.cos(angle), centreLat + distance * Math.sin(angle)));
+        }
+        ring.add(ring.get(0));
+        return ring;
+    }
+
+    /**
+     * Builds random drone moves inside the confinement area.
+     *
+     * @param numMoves the number of moves to be built
+     * @param random the random number generator to be used
+     * @return the moves, as 4 doubles each; start longitude, start latitude, end longitude and end latitude
+     */
+    public static double[] randomMoves(int numMoves, Random random){
+        double[] moves = new double[numMoves * 4];
+        for(int i = 0; i < numMoves; i++){
+            LongLat start = randomPoint(random);
+            LongLat end = start.nextPosition(LongLat.ANGLE_SCALE * random.nextInt(LongLat.MAX_ANGLE / LongLat.ANGLE_SCALE + 1));
+            moves[4*i] = start.lng;
+            moves[4*i+1] = start.lat;
+            moves[4*i+2] = end.lng;
+            moves[4*i+3] = end.lat;
+        }
+        return moves;
+    }
+
+    /**
+     * Picks a random point inside the confinement area.
+     *
+     * @param random the random number generator to be used
+     * @return the point
+     */
+    public static LongLat randomPoint(Random random){
+        double lng = LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE);
+        double lat = LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE);
+        return new LongLat(lng, lat);
+    }
+
+    /**
+     * Times a block of code, after first running it WARMUP_ROUNDS times.
+     *
+     * @param block the code to be timed
+     * @return the fastest time taken by any of TIMED_ROUNDS runs of the block, in milliseconds
+     */
+    public static double time(Runnable block){
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            block.run();
+        }
+        ArrayList<Long> times = new ArrayList<>();
+        for(int i = 0; i < TIMED_ROUNDS; i++){
+            long start = System.nanoTime();
+            block.run();
+            times.add(System.nanoTime() - start);
+        }
+        return Collections.min(times) / 1e6;
+    }
+
+    /**
+     * Adds the result of a query to a running checksum, so that the order of results matters.
+     *
+     * @param checksum the checksum so far
+     * @param result the result of the query
+     * @return the new checksum
+     */
+    public static int checksum(int checksum, boolean result){
+        return 31 * checksum + (result ? 1 : 0);
+    }
+
+    /**
+     * Checks that 2 implementations being compared gave the same result, exiting the application if not.
+     *
+     * @param benchmark the name of the benchmark being run
+     * @param expected the result of the implementation being replaced
+     * @param actual the result of the replacement
+     */
+    public static void checkSame(String benchmark, Object expected, Object actual){
+        if(!expected.equals(actual)){
+            System.err.println(String.format("Fatal error in Benchmark.%s: results differ (%s vs %s).", benchmark, expected, actual));
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package uk.ac.ed.inf;
+
+/**
+ * A raster of the confinement area recording, for each cell, what is known about its relation to the no-fly-zones.
+ *
+ * Every cell is classified once, from the distance between its centre and the nearest edge of any zone. If that
+ * distance is large enough, every point in the cell is known to be inside (or outside) the zones, and known to be
+ * too close to them (or not). Queries for points in such cells are answered by a single array lookup; queries for
+ * points in cells lying near the edge of a zone are left to the exact geometry.
+ *
+ * One byte is stored per cell, so the memory used is the number of cells in bytes.
+ */
+public class ClearanceRaster {
+    /** Flag set on a cell if whether its points lie inside the zones is known */
+    private static final byte INSIDE_KNOWN = 1;
+    /** Flag set on a cell if all its points lie inside the zones; only meaningful with INSIDE_KNOWN */
+    private static final byte INSIDE = 2;
+    /** Flag set on a cell if whether its points are too close to the zones is known */
+    private static final byte TOO_CLOSE_KNOWN = 4;
+    /** Flag set on a cell if all its points are too close to the zones; only meaningful with TOO_CLOSE_KNOWN */
+    private static final byte TOO_CLOSE = 8;
+    /** The factor by which the half diagonal of a cell is grown, to allow for rounding in distance calculations */
+    private static final double ROUNDING_MARGIN = 1.001;
+
+    /** The number of columns (cells along the longitude axis) */
+    private final int cols;
+    /** The number of rows (cells along the latitude axis) */
+    private final int rows;
+    /** The width and height of each cell in degrees */
+    private final double cellSize;
+    /** The flags of each cell, row after row */
+    private final byte[] cells;
+
+    /**
+     * Constructor to build a new ClearanceRaster over the confinement area.
+     *
+     * The cell size requested is grown if needed so that the raster takes no more than maxBytes of memory.
+     *
+     * @param geometry the compiled no-fly-zones
+     * @param clearance the distance from the zones within which a point is too close to them
+     * @param cellSize the requested width and height of each cell in degrees, greater than 0
+     * @param maxBytes the most memory the raster may take in bytes
+     */
+    public ClearanceRaster(ZoneGeometry geometry, double clearance, double cellSize, long maxBytes){
+        if(!(cellSize > 0)){
+            System.err.println(String.format("Fatal error in ClearanceRaster: cellSize must be positive, not %s.", cellSize));
+            System.exit(1);
+        }
+        double width = LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE;
+        double height = LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE;
+        long maxCells = Math.max(1, Math.min(maxBytes, Integer.MAX_VALUE));
+        while(Math.ceil(width / cellSize) * Math.ceil(height / cellSize) > maxCells){
+            cellSize *= 1.01;
+        }
+        this.cellSize = cellSize;
+        this.cols = (int) Math.max(1, Math.ceil(width / this.cellSize));
+        this.rows = (int) Math.max(1, Math.ceil(height / this.cellSize));
+        this.cells = new byte[cols * rows];
+        classifyCells(geometry, clearance);
+    }
+
+    /**
+     * Classifies every cell of the raster.
+     *
+     * For a cell whose centre is d from the nearest edge and which has half diagonal h, every point in the cell is
+     * between d - h and d + h from the nearest edge. If d > h no edge passes through the cell, so all its points
+     * share the inside/outside status of the centre.
+     *
+     * @param geometry the compiled no-fly-zones
+     * @param clearance the distance from the zones within which a point is too close to them
+     */
+    private void classifyCells(ZoneGeometry geometry, double clearance){
+        double halfDiagonal = ROUNDING_MARGIN * cellSize * Math.sqrt(2) / 2;
+        for(int row = 0; row < rows; row++){
+            for(int col = 0; col < cols; col++){
+                double centreLng = LongLat.MIN_LONGITUDE + (col + 0.5) * cellSize;
+                double centreLat = LongLat.MIN_LATITUDE + (row + 0.5) * cellSize;
+                double distance = geometry.distanceToEdges(centreLng, centreLat, clearance + 2 * halfDiagonal);
+                boolean inside = geometry.containsPoint(centreLng, centreLat);
+
+                byte flags = 0;
+                if(distance > halfDiagonal){
+                    flags |= INSIDE_KNOWN;
+                    if(inside){
+                        flags |= INSIDE | TOO_CLOSE_KNOWN | TOO_CLOSE;
+                    }else if(distance - halfDiagonal >= clearance){
+                        flags |= TOO_CLOSE_KNOWN;
+                    }
+                }
+                if(distance + halfDiagonal < clearance){
+                    flags |= TOO_CLOSE_KNOWN | TOO_CLOSE;
+                }
+                cells[row * cols + col] = flags;
+            }
+        }
+    }
+
+    /**
+     * Gets the flags of the cell containing a point.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return the flags of the cell, or 0 (nothing known) if the point is outside the raster
+     */
+    private byte flagsAt(double lng, double lat){
+        double colPos = (lng - LongLat.MIN_LONGITUDE) / cellSize;
+        double rowPos = (lat - LongLat.MIN_LATITUDE) / cellSize;
+        if(!(colPos >= 0 && colPos < cols && rowPos >= 0 && rowPos < rows)){
+            return 0;
+        }
+        return cells[(int) rowPos * cols + (int) colPos];
+    }
+
+    /**
+     * Looks up whether a point lies inside the zones.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return 1 if the point is known to be inside the zones, 0 if it is known to be outside them, or -1 if the exact
+     *         geometry must be checked
+     */
+    public int lookUpInside(double lng, double lat){
+        byte flags = flagsAt(lng, lat);
+        if((flags & INSIDE_KNOWN) == 0){
+            return -1;
+        }
+        return ((flags & INSIDE) != 0) ? 1 : 0;
+    }
+
+    /**
+     * Looks up whether a point is too close to the zones.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return 1 if the point is known to be too close to the zones, 0 if it is known not to be, or -1 if the exact
+     *         geometry must be checked
+     */
+    public int lookUpTooClose(double lng, double lat){
+        byte flags = flagsAt(lng, lat);
+        if((flags & TOO_CLOSE_KNOWN) == 0){
+            return -1;
+        }
+        return ((flags & TOO_CLOSE) != 0) ? 1 : 0;
+    }
+
+    /**
+     * Gets the width and height of each cell, which may be larger than requested if memory was limited.
+     *
+     * @return the width and height of each cell in degrees
+     */
+    public double getCellSize(){
+        return cellSize;
+    }
+
+    /**
+     * Gets the memory taken by the cells of the raster.
+     *
+     * @return the size of the raster in bytes
+     */
+    public long getSizeInBytes(){
+        return cells.length;
+    }
+
+    /**
+     * Gets the fraction of cells for which whether their points are too close to the zones is known.
+     *
+     * @return the fraction of cells that can answer pointTooCloseToZones queries without the exact geometry
+     */
+    public double getFractionKnown(){
+        int known = 0;
+        for(byte flags : cells){
+            if((flags & TOO_CLOSE_KNOWN) != 0){
+                known++;
+            }
+        }
+        return (double) known / cells.length;
+    }
+}
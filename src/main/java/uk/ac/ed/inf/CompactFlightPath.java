@@ -0,0 +1,62 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+
+/**
+ * Packs the moves of a delivery into bytes for the compact flight path schema, and expands them back into records
+ * of the flightpath table.
+ *
+ * Every move is on a bearing that is a multiple of LongLat.ANGLE_SCALE, so it is stored as a single byte, its bearing
+ * divided by ANGLE_SCALE, or HOVER_CODE where the drone hovers. With the point at which the delivery starts, those
+ * bytes give back every point of the delivery, by repeating its moves.
+ */
+public class CompactFlightPath {
+    /** The byte stored for a move in which the drone hovers */
+    public static final byte HOVER_CODE = (byte) (LongLat.MAX_ANGLE / LongLat.ANGLE_SCALE + 1);
+
+    /** Default constructor to prevent instantiation */
+    private CompactFlightPath(){}
+
+    /**
+     * Packs the moves between the points of a FlightPath into bytes, one per move.
+     *
+     * @param path the points visited in making a delivery, at least one
+     * @param hoverAtEnd true if a hover is to be added after the last point, as at the end of every delivery
+     * @return the bytes of the moves, in order
+     */
+    public static byte[] encode(FlightPath path, boolean hoverAtEnd){
+        int numMoves = path.size() - 1;
+        byte[] moves = new byte[numMoves + (hoverAtEnd ? 1 : 0)];
+        for(int i = 0; i < numMoves; i++){
+            int angle = LongLat.getBearing(path.getLng(i), path.getLat(i), path.getLng(i+1), path.getLat(i+1));
+            moves[i] = (angle == LongLat.JUNK_ANGLE) ? HOVER_CODE : (byte) (angle / LongLat.ANGLE_SCALE);
+        }
+        if(hoverAtEnd){
+            moves[numMoves] = HOVER_CODE;
+        }
+        return moves;
+    }
+
+    /**
+     * Expands packed moves back into one record per move, as the flightpath table holds them.
+     *
+     * The points are found by making each move in turn with LongLat.nextPosition from the start. The drone's points
+     * are found in the same way when it flies, so they are given back exactly, bit for bit.
+     *
+     * @param orderNo the ID of the order being delivered
+     * @param startLng the longitude of the point at which the delivery starts
+     * @param startLat the latitude of the point at which the delivery starts
+     * @param moves the bytes of the moves, as returned by encode
+     * @param records the list to which a record for each move is added, in order
+     */
+    public static void decode(String orderNo, double startLng, double startLat, byte[] moves,
+                              ArrayList<FlightPathRecord> records){
+        LongLat position = new LongLat(startLng, startLat);
+        for(byte move : moves){
+            int angle = (move == HOVER_CODE) ? LongLat.JUNK_ANGLE : move * LongLat.ANGLE_SCALE;
+            LongLat next = position.nextPosition(angle);
+            records.add(new FlightPathRecord(orderNo, position.lng, position.lat, angle, next.lng, next.lat));
+            position = next;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package uk.ac.ed.inf;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of long-lived connections to the database, each with its own cache of prepared statements.
+ *
+ * A connection is borrowed for a unit of work and released when it is done, rather than opened for every statement
+ * and never closed. Connections are opened as they are first needed, up to a maximum; once that many are borrowed, a
+ * borrower waits for one to be released. The statements prepared on a connection are kept with it, so each query is
+ * prepared once per connection rather than once per use. A connection found closed when borrowed is replaced.
+ *
+ * Counts of the connections opened, the borrows that reused a connection or had to wait for one, and the statements
+ * prepared and reused are kept so that the pool can be tuned.
+ */
+public class ConnectionPool {
+    /** The default maximum number of connections open at once */
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    /** The default longest time in milliseconds a borrower waits for a connection before giving up */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+
+    /** The address at which the database is hosted */
+    private final String jdbcString;
+    /** The maximum number of connections open at once */
+    private final int maxConnections;
+    /** The longest time in milliseconds a borrower waits for a connection before giving up */
+    private final long maxWaitMillis;
+    /** The open connections not currently borrowed */
+    private final LinkedBlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    /**
+     * The statements prepared on each open connection, by their SQL; each inner map is only used by the borrower of
+     * its connection
+     */
+    private final ConcurrentHashMap<Connection, HashMap<String, PreparedStatement>> statements = new ConcurrentHashMap<>();
+    /** The number of connections open, borrowed or not */
+    private int numOpen = 0;
+    /** Whether the pool has been closed */
+    private boolean closed = false;
+    /** The number of connections ever opened */
+    private long connectionsOpened = 0;
+    /** The number of connections borrowed */
+    private long borrows = 0;
+    /** The number of borrows given a connection that had been used before */
+    private long reuses = 0;
+    /** The number of borrows that had to wait for a connection to be released */
+    private long waits = 0;
+    /** The total time in nanoseconds borrowers spent waiting for a connection */
+    private long waitNanos = 0;
+    /** The number of statements prepared */
+    private long statementsPrepared = 0;
+    /** The number of times a statement already prepared was reused */
+    private long statementReuses = 0;
+
+    /**
+     * Constructor to instantiate a ConnectionPool of DEFAULT_MAX_CONNECTIONS connections.
+     *
+     * @param jdbcString the address at which the database is hosted
+     */
+    public ConnectionPool(String jdbcString){
+        this(jdbcString, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Constructor to instantiate a ConnectionPool.
+     *
+     * @param jdbcString the address at which the database is hosted
+     * @param maxConnections the maximum number of connections open at once, at least 1
+     * @param maxWaitMillis the longest time in milliseconds a borrower waits for a connection before giving up
+     */
+    public ConnectionPool(String jdbcString, int maxConnections, long maxWaitMillis){
+        if(maxConnections < 1){
+            System.err.println(String.format("Fatal error in ConnectionPool: maxConnections must be at least 1, not %d.", maxConnections));
+            System.exit(1);
+        }
+        this.jdbcString = jdbcString;
+        this.maxConnections = maxConnections;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening one if none is idle and fewer than the maximum are open, or else
+     * waiting for one to be released.
+     *
+     * Every connection borrowed must be released exactly once, with release, when the work done with it is finished.
+     * If no connection can be opened or none is released in time, the exception message is printed and the
+     * application exits.
+     *
+     * @return the connection, with auto-commit on
+     */
+    public Connection borrow(){
+        while(true){
+            Connection conn = idle.poll();
+            boolean reused = (conn != null);
+            if(conn == null && reserveConnection()){
+                conn = openConnection();
+            }
+            if(conn == null){
+                conn = awaitConnection();
+                reused = true;
+            }
+            if(isUsable(conn)){
+                countBorrow(reused);
+                return conn;
+            }
+            discard(conn);
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, so that it can be borrowed again.
+     *
+     * The connection must not be used by the caller afterwards, nor any statement prepared on it.
+     *
+     * @param conn the connection, as returned by borrow
+     */
+    public void release(Connection conn){
+        synchronized(this){
+            if(!closed){
+                idle.offer(conn);
+                return;
+            }
+        }
+        // The pool was closed while the connection was borrowed.
+        discard(conn);
+    }
+
+    /**
+     * Gets a statement prepared on a borrowed connection, preparing it only if it has not been before.
+     *
+     * The statement stays with the connection and is reused by later borrowers, so it must not be closed by the
+     * caller. Its parameters should all be set before each use.
+     *
+     * @param conn the connection, as returned by borrow
+     * @param sql the SQL of the statement
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        HashMap<String, PreparedStatement> prepared = statements.computeIfAbsent(conn, c -> new HashMap<>());
+        PreparedStatement statement = prepared.get(sql);
+        if(statement == null){
+            statement = conn.prepareStatement(sql);
+            prepared.put(sql, statement);
+            countStatement(false);
+        }else{
+            countStatement(true);
+        }
+        return statement;
+    }
+
+    /**
+     * Closes every idle connection and the statements prepared on it, and any connection released from now on.
+     *
+     * No connection can be borrowed once the pool is closed.
+     */
+    public void close(){
+        ArrayList<Connection> toClose = new ArrayList<>();
+        synchronized(this){
+            closed = true;
+            idle.drainTo(toClose);
+        }
+        for(Connection conn : toClose){
+            discard(conn);
+        }
+    }
+
+    /**
+     * Gets the number of connections ever opened.
+     *
+     * @return the number of connections opened
+     */
+    public synchronized long getConnectionsOpened(){
+        return connectionsOpened;
+    }
+
+    /**
+     * Gets the number of connections borrowed.
+     *
+     * @return the number of borrows
+     */
+    public synchronized long getBorrows(){
+        return borrows;
+    }
+
+    /**
+     * Gets the number of borrows given a connection that had been used before, rather than a newly opened one.
+     *
+     * @return the number of borrows that reused a connection
+     */
+    public synchronized long getReuses(){
+        return reuses;
+    }
+
+    /**
+     * Gets the number of borrows that had to wait for a connection to be released.
+     *
+     * @return the number of borrows that waited
+     */
+    public synchronized long getWaits(){
+        return waits;
+    }
+
+    /**
+     * Gets the total time borrowers spent waiting for a connection to be released.
+     *
+     * @return the total time waited in milliseconds
+     */
+    public synchronized long getWaitMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+    /**
+     * Gets the number of statements prepared.
+     *
+     * @return the number of statements prepared
+     */
+    public synchronized long getStatementsPrepared(){
+        return statementsPrepared;
+    }
+
+    /**
+     * Gets the number of times a statement already prepared on a connection was reused.
+     *
+     * @return the number of statements reused
+     */
+    public synchronized long getStatementReuses(){
+        return statementReuses;
+    }
+
+    /**
+     * Reserves room for a new connection, if fewer than the maximum are open.
+     *
+     * @return true if a connection may be opened, false if the maximum are already open
+     */
+    private synchronized boolean reserveConnection(){
+        if(closed){
+            System.err.println("Fatal error in ConnectionPool.borrow: the pool has been closed.");
+            System.exit(1);
+        }
+        if(numOpen < maxConnections){
+            numOpen++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Opens a new connection, room for which has been reserved.
+     *
+     * If the connection cannot be opened, the exception message is printed and the application exits.
+     *
+     * @return the connection
+     */
+    private Connection openConnection(){
+        try {
+            Connection conn = DriverManager.getConnection(jdbcString);
+            synchronized(this){
+                connectionsOpened++;
+            }
+            return conn;
+        } catch (SQLException e) {
+            System.err.println("Fatal error in ConnectionPool.openConnection: " + e.getMessage());
+            System.exit(1);
+            // Return statement required by compiler; never actually returns.
+            return null;
+        }
+    }
+
+    /**
+     * Waits for a connection to be released, counting the wait.
+     *
+     * If none is released within maxWaitMillis, or the wait is interrupted, the application exits.
+     *
+     * @return the connection released
+     */
+    private Connection awaitConnection(){
+        long start = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = idle.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this){
+            waits++;
+            waitNanos += System.nanoTime() - start;
+        }
+        if(conn == null){
+            System.err.println(String.format("Fatal error in ConnectionPool.borrow: no connection was released within %d ms.", maxWaitMillis));
+            System.exit(1);
+        }
+        return conn;
+    }
+
+    /**
+     * Checks if a connection can still be used, without a round-trip to the database.
+     *
+     * @param conn the connection
+     * @return true if the connection is open, false otherwise
+     */
+    private static boolean isUsable(Connection conn){
+        try {
+            return !conn.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes a connection and the statements prepared on it, freeing its place in the pool.
+     *
+     * Errors while closing are ignored, as the connection is being given up on either way.
+     *
+     * @param conn the connection
+     */
+    private void discard(Connection conn){
+        HashMap<String, PreparedStatement> prepared = statements.remove(conn);
+        if(prepared != null){
+            for(PreparedStatement statement : prepared.values()){
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+        synchronized(this){
+            numOpen--;
+        }
+    }
+
+    /**
+     * Counts a borrow.
+     *
+     * @param reused true if the connection borrowed had been used before
+     */
+    private synchronized void countBorrow(boolean reused){
+        borrows++;
+        if(reused){
+            reuses++;
+        }
+    }
+
+    /**
+     * Counts a statement prepared or reused.
+     *
+     * @param reused true if the statement had already been prepared
+     */
+    private synchronized void countStatement(boolean reused){
+        if(reused){
+            statementReuses++;
+        }else{
+            statementsPrepared++;
+        }
+    }
+}
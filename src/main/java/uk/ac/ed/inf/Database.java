@@ -4,15 +4,29 @@ import java.sql.*;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Methods in this class handle all functionality relating to database IO.
+ *
+ * Each method borrows a connection from a ConnectionPool for the whole of its work and releases it when done, and
+ * prepares its statements through the pool so that each is prepared once per connection.
  */
 public class Database {
     /** The name of the machine on which the database is hosted */
     public static final String MACHINE_NAME = "localhost";
-    /** Query to select all the orders from the orders table on a given date */
-    private static final String READ_ORDERS_QUERY_STR = "select * from orders where deliveryDate =(?)";
+    /**
+     * Query to select all the orders from the orders table on a given date, joined with their contents from the
+     * orderDetails table; one row per item, or one with a null item for an order with no contents
+     */
+    private static final String READ_ORDERS_QUERY_STR = "select orders.orderNo, orders.customer, orders.deliverTo, orderDetails.item "+
+            "from orders left join orderDetails on orders.orderNo = orderDetails.orderNo "+
+            "where orders.deliveryDate =(?)";
+    /** The number of rows of a day's orders fetched from the database in each round-trip */
+    private static final int READ_ORDERS_FETCH_SIZE = 1000;
     /** Query to select the contents of an order from the orderDetails table */
     private static final String READ_ORDER_CONTENTS_QUERY_STR = "select * from orderDetails where orderNo =(?)";
     /** Query to insert a record into the deliveries table */
@@ -32,16 +46,44 @@ public class Database {
             "angle integer,"+
             "toLongitude double,"+
             "toLatitude double)";
+    /** Query to insert a record into the flightpathcompact table */
+    private static final String INSERT_COMPACT_PATH_QUERY = "insert into flightpathcompact(orderNo, startLongitude, startLatitude, moves) values (?, ?, ?, ?)";
+    /** Query to read every record of the flightpath table, in no particular order */
+    private static final String READ_FLIGHTPATH_QUERY_STR = "select * from flightpath";
+    /** Query to read every record of the flightpathcompact table, in the order they were inserted */
+    private static final String READ_COMPACT_PATHS_QUERY_STR = "select * from flightpathcompact order by pathNo";
+    /**
+     * Query to create the compact flight path table; one record per delivery, with the moves packed one byte each,
+     * and numbered so that they can be read back in order
+     */
+    private static final String CREATE_FLIGHTPATH_COMPACT_QUERY_STR = "create table flightpathcompact("+
+            "pathNo int generated always as identity,"+
+            "orderNo char(8),"+
+            "startLongitude double,"+
+            "startLatitude double,"+
+            "moves varchar(32672) for bit data)";
     /** The name of the deliveries table */
     public static final String DELIVERIES = "deliveries";
     /** The name of the flightpath table */
     public static final String FLIGHTPATH = "flightpath";
+    /** The name of the compact flight path table */
+    public static final String FLIGHTPATH_COMPACT = "flightpathcompact";
     /** Prefix of address at which database is hosted */
     private static final String JDBC_PREFIX = "jdbc:derby://";
     /** Suffix address at which database is hosted */
     private static final String JDBC_SUFFIX = "/derbyDB";
+    /** The default number of records sent to the database at once when inserting */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /** The batch size with which each record is inserted and committed on its own, as a statement of its own */
+    public static final int UNBATCHED = 0;
     /** The address at which the database is hosted */
     private static String jdbcString = "";
+    /** The pool of connections to the database at jdbcString; null until it is set */
+    private static ConnectionPool pool = null;
+    /** The number of records sent to the database at once when inserting, or UNBATCHED */
+    private static int batchSize = DEFAULT_BATCH_SIZE;
+    /** How the drone's flight path is stored */
+    private static FlightPathSchema flightPathSchema = FlightPathSchema.ROWS;
 
     /**
      * Default constructor to prevent instantiation
@@ -50,12 +92,35 @@ public class Database {
     }
 
     /**
-     * Sets the address at which the database is hosted.
+     * Sets the address at which the database is hosted, closing the pool of connections to any address set before.
      *
      * @param port the port to which a connection must be made
      */
     public static void setJdcbString(String port){
         jdbcString = JDBC_PREFIX + MACHINE_NAME + ":" + port + JDBC_SUFFIX;
+        if(pool != null){
+            pool.close();
+        }
+        pool = new ConnectionPool(jdbcString);
+    }
+
+    /**
+     * Gets the pool of connections to the database, whose counts show how well connections and statements are reused.
+     *
+     * @return the pool of connections
+     */
+    public static ConnectionPool getConnectionPool(){
+        isJdbcStrSet();
+        return pool;
+    }
+
+    /**
+     * Closes every connection to the database. A new pool is opened when the address is next set.
+     */
+    public static void close(){
+        if(pool != null){
+            pool.close();
+        }
     }
 
     /**
@@ -69,42 +134,46 @@ public class Database {
     }
 
     /**
-     * Attempts to make a connection to the database server.
+     * Borrows a connection to the database server from the pool.
      *
      * If a connection to the database at the address specified by 'jdbcString' cannot be made,
      * the exception message is printed and the application exits.
      *
-     * @return the connection to the database, if successfully made
+     * @return the connection to the database, which must be released with releaseConnection
      */
     private static Connection makeConnection() {
-        try {
-            isJdbcStrSet();
-            return DriverManager.getConnection(jdbcString);
-        } catch (SQLException e) {
-            System.err.println("Fatal error in 'makeConnection': " + e.getMessage());
-            System.exit(1);
-            // Return statement required by compiler; never actually returns.
-            return null;
-        }
+        isJdbcStrSet();
+        return pool.borrow();
+    }
+
+    /**
+     * Returns a connection borrowed with makeConnection to the pool.
+     *
+     * @param conn the connection
+     */
+    private static void releaseConnection(Connection conn) {
+        pool.release(conn);
     }
 
     /**
      * Builds a PreparedStatement object that will be used to query the database.
      *
      * This query will seek to read all records from the orders table that were placed
-     * on 'date'. If the PreparedObject cannot be instantiated then the exception message
+     * on 'date', each with its contents from the orderDetails table. If the PreparedObject cannot be instantiated then the exception message
      * is printed and the application closes.
      *
+     * @param conn the connection on which the query is to be made
      * @param date the date on which the orders the query seeks to read were placed
-     * @return the PreparedStatement object, initialised with READ_ORDERS_QUERY_STR
+     * @return the PreparedStatement object, initialised with READ_ORDERS_QUERY_STR; cached with conn, so not to be
+     *         closed
      */
-    public static PreparedStatement buildReadOrdersQuery(String date) {
+    public static PreparedStatement buildReadOrdersQuery(Connection conn, String date) {
         try {
-            Connection conn = makeConnection();
-            PreparedStatement psReadOrdersQuery = conn.prepareStatement(READ_ORDERS_QUERY_STR);
+            PreparedStatement psReadOrdersQuery = pool.prepare(conn, READ_ORDERS_QUERY_STR);
             SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy");
             java.util.Date parsedDate = formatter.parse(date);
             psReadOrdersQuery.setDate(1, new java.sql.Date(parsedDate.getTime()));
+            psReadOrdersQuery.setFetchSize(READ_ORDERS_FETCH_SIZE);
             return psReadOrdersQuery;
         } catch (SQLException | ParseException e) {
             System.err.println("Fatal error in 'buildReadOrdersQuery': " + e.getMessage());
@@ -115,7 +184,11 @@ public class Database {
     }
 
     /**
-     * Reads the orders placed on 'date' from the orders table of the database.
+     * Reads the orders placed on 'date' from the orders table of the database, with their contents.
+     *
+     * The orders and their contents are read with a single query, whose rows are grouped into orders as they are
+     * streamed, so the number of round-trips grows with the number of rows fetched rather than of orders. Orders are
+     * kept in the order in which they first appear, and each order's items in the order they are read.
      *
      * If this is unsuccessful, the exception message is printed and the application
      * exits.
@@ -124,17 +197,34 @@ public class Database {
      * @return an ArrayList of Order objects, each representing a record read from the database
      */
     public static ArrayList<Order> readOrders(String date, Menus m) {
+        Connection conn = makeConnection();
         try {
-            PreparedStatement psReadOrdersQuery = buildReadOrdersQuery(date);
-            ArrayList<Order> orderList = new ArrayList<>();
-            ResultSet rs = psReadOrdersQuery.executeQuery();
-            while (rs.next()) {
-                String orderId = rs.getString("orderNo");
-                String customerId = rs.getString("customer");
-                String deliveryLoc = rs.getString("deliverTo");
-                ArrayList<String> contents = readOrderContents(orderId);
+            PreparedStatement psReadOrdersQuery = buildReadOrdersQuery(conn, date);
+            // The customer and delivery location of each order, then its contents, by order number.
+            LinkedHashMap<String, String[]> orderDetails = new LinkedHashMap<>();
+            HashMap<String, ArrayList<String>> orderContents = new HashMap<>();
+            try (ResultSet rs = psReadOrdersQuery.executeQuery()) {
+                while (rs.next()) {
+                    String orderId = rs.getString("orderNo");
+                    ArrayList<String> contents = orderContents.get(orderId);
+                    if (contents == null) {
+                        contents = new ArrayList<>();
+                        orderContents.put(orderId, contents);
+                        orderDetails.put(orderId, new String[]{rs.getString("customer"), rs.getString("deliverTo")});
+                    }
+                    String item = rs.getString("item");
+                    if (item != null) {
+                        contents.add(item);
+                    }
+                }
+            }
+
+            ArrayList<Order> orderList = new ArrayList<>(orderDetails.size());
+            for (Map.Entry<String, String[]> details : orderDetails.entrySet()) {
+                String orderId = details.getKey();
+                ArrayList<String> contents = orderContents.get(orderId);
                 int orderValue = m.getDeliveryCost(contents.toArray(new String[0]));
-                orderList.add(new Order(orderId, customerId, deliveryLoc, contents, orderValue));
+                orderList.add(new Order(orderId, details.getValue()[0], details.getValue()[1], contents, orderValue));
             }
             return orderList;
         } catch (SQLException e) {
@@ -142,6 +232,8 @@ public class Database {
             System.exit(1);
             // Return statement required by compiler; never actually returns.
             return null;
+        } finally {
+            releaseConnection(conn);
         }
     }
 
@@ -152,13 +244,14 @@ public class Database {
      * is equal to the one supplied as a parameter of this method. If the PreparedObject cannot be
      * instantiated then the exception message is printed and the application closes.
      *
+     * @param conn the connection on which the query is to be made
      * @param orderNo the order whose contents are to be read
-     * @return the PreparedStatement object, initialised with READ_ORDER_CONTENTS_QUERY_STR
+     * @return the PreparedStatement object, initialised with READ_ORDER_CONTENTS_QUERY_STR; cached with conn, so not
+     *         to be closed
      */
-    public static PreparedStatement buildReadOrderContentsQuery(String orderNo) {
+    public static PreparedStatement buildReadOrderContentsQuery(Connection conn, String orderNo) {
         try {
-            Connection conn = makeConnection();
-            PreparedStatement psReadOrderContentsQuery = conn.prepareStatement(READ_ORDER_CONTENTS_QUERY_STR);
+            PreparedStatement psReadOrderContentsQuery = pool.prepare(conn, READ_ORDER_CONTENTS_QUERY_STR);
             psReadOrderContentsQuery.setString(1, orderNo);
             return psReadOrderContentsQuery;
         } catch (SQLException e) {
@@ -179,13 +272,15 @@ public class Database {
      * @return an ArrayList of Strings, representing the contents of the order
      */
     public static ArrayList<String> readOrderContents(String orderNo) {
+        Connection conn = makeConnection();
         try {
-            PreparedStatement psReadOrderContentsQuery = buildReadOrderContentsQuery(orderNo);
+            PreparedStatement psReadOrderContentsQuery = buildReadOrderContentsQuery(conn, orderNo);
             ArrayList<String> contents = new ArrayList<>();
-            ResultSet rs = psReadOrderContentsQuery.executeQuery();
-            while (rs.next()) {
-                String item = rs.getString("item");
-                contents.add(item);
+            try (ResultSet rs = psReadOrderContentsQuery.executeQuery()) {
+                while (rs.next()) {
+                    String item = rs.getString("item");
+                    contents.add(item);
+                }
             }
             return contents;
         } catch (SQLException e) {
@@ -193,6 +288,8 @@ public class Database {
             System.exit(1);
             // Return statement required by compiler; never actually returns.
             return null;
+        } finally {
+            releaseConnection(conn);
         }
     }
 
@@ -204,39 +301,42 @@ public class Database {
      * @param name the name of the table to be created
      */
     public static void createTable(String name){
-        try{
-            Connection conn = makeConnection();
-            Statement statement = conn.createStatement();
+        Connection conn = makeConnection();
+        try (Statement statement = conn.createStatement()) {
             switch(name.toLowerCase()){
                 case DELIVERIES: {
-                    deleteIfExists(DELIVERIES);
+                    deleteIfExists(conn, DELIVERIES);
                     statement.execute(CREATE_DELIVERIES_QUERY_STR);
                 }break;
                 case FLIGHTPATH: {
-                    deleteIfExists(FLIGHTPATH);
+                    deleteIfExists(conn, FLIGHTPATH);
                     statement.execute(CREATE_FLIGHTPATH_QUERY_STR);
+                }break;
+                case FLIGHTPATH_COMPACT: {
+                    deleteIfExists(conn, FLIGHTPATH_COMPACT);
+                    statement.execute(CREATE_FLIGHTPATH_COMPACT_QUERY_STR);
                 }
             }
         } catch (SQLException e) {
             System.err.println("Fatal error in Database.createTable: " + e.getMessage());
             System.exit(1);
+        } finally {
+            releaseConnection(conn);
         }
     }
 
     /**
      * Deletes a database table, if it already exists.
      *
+     * @param conn the connection on which the table is to be deleted
      * @param tableName the table to be deleted
      */
-    private static void deleteIfExists(String tableName){
+    private static void deleteIfExists(Connection conn, String tableName){
         String nameLower = tableName.toLowerCase();
         String nameUpper = tableName.toUpperCase();
 
-        try{
-            Connection conn = makeConnection();
-            Statement statement = conn.createStatement();
-            DatabaseMetaData databaseMetaData = conn.getMetaData();
-            ResultSet resultSet = databaseMetaData.getTables(null, null, nameUpper, null);
+        try (Statement statement = conn.createStatement();
+             ResultSet resultSet = conn.getMetaData().getTables(null, null, nameUpper, null)) {
             if(resultSet.next()){
                 statement.execute(String.format("drop table %s", nameLower));
             }
@@ -247,73 +347,355 @@ public class Database {
     }
 
     /**
-     * Inserts an ArrayList of orders into the deliveries table, one by one.
+     * Sets the number of records sent to the database at once by insertDeliveries and insertFlightPaths.
+     *
+     * @param size the number of records per batch, at least 1, or UNBATCHED to insert and commit each record on its
+     *             own
+     */
+    public static void setBatchSize(int size){
+        if(size < 1 && size != UNBATCHED){
+            System.err.println(String.format("Fatal error in Database.setBatchSize: batch size must be at least 1, not %d.", size));
+            System.exit(1);
+        }
+        batchSize = size;
+    }
+
+    /**
+     * Sets how the drone's flight path is stored by insertFlightPaths and appendFlightPaths, and read by
+     * readFlightPath.
+     *
+     * @param schema the schema of the flight path
+     */
+    public static void setFlightPathSchema(FlightPathSchema schema){
+        flightPathSchema = schema;
+    }
+
+    /**
+     * Gets the name of the table in which the drone's flight path is stored.
+     *
+     * @return FLIGHTPATH_COMPACT if the flight path is stored compactly, FLIGHTPATH otherwise
+     */
+    public static String getFlightPathTable(){
+        return (flightPathSchema == FlightPathSchema.COMPACT) ? FLIGHTPATH_COMPACT : FLIGHTPATH;
+    }
+
+    /**
+     * Inserts an ArrayList of orders into the deliveries table, in batches of batchSize records in one transaction.
      *
      * @param ordersDelivered the orders to be inserted into the deliveries table as
      *                        records
      */
     public static void insertDeliveries(ArrayList<Delivery> ordersDelivered){
+        createTable(DELIVERIES);
+        appendDeliveries(ordersDelivered);
+    }
+
+    /**
+     * Adds orders to the deliveries table, which must already exist, in batches of batchSize records in one
+     * transaction.
+     *
+     * @param ordersDelivered the orders to be added to the deliveries table as records
+     */
+    public static void appendDeliveries(List<Delivery> ordersDelivered){
+        Connection conn = makeConnection();
         try {
-            createTable(DELIVERIES);
-            for (Delivery d : ordersDelivered) {
-                buildInsertDeliveryQuery(d.orderDelivered).execute();
-            }
+            beginWrite(conn);
+            addDeliveryRecords(conn, ordersDelivered);
+            endWrite(conn);
         } catch (SQLException e) {
-            System.err.println("Fatal error in Database.insertDeliveries: " + e.getMessage());
+            abortWrite(conn);
+            System.err.println("Fatal error in Database.appendDeliveries: " + e.getMessage());
             System.exit(1);
+        } finally {
+            releaseConnection(conn);
         }
     }
 
     /**
-     * Inserts the moves made by the drone in delivering all orders into the flightpath table.
+     * Inserts the moves made by the drone in delivering all orders into the flightpath table, in batches of batchSize
+     * records in one transaction.
      *
      * Each move in 2D space has its own record inserted into the table, with records for hover moves
      * also added when the drone reaches a location it must visit to complete an order.
      *
-     * @param flightPath an ArrayList of ArrayLists of What3WordsLoc.LongLat objects. Each ArrayList represents the
-     *                  moves made by the drone through 2D space to complete each order it delivered
+     * @param flightPath an ArrayList of FlightPaths. Each FlightPath represents the moves made by the drone through
+     *                   2D space to complete each order it delivered
      * @param deliveriesMade the orders delivered by the drone, whose moves are specified in positions
      */
-    public static void insertFlightPaths(ArrayList<ArrayList<LongLat>> flightPath, ArrayList<Delivery> deliveriesMade){
+    public static void insertFlightPaths(ArrayList<FlightPath> flightPath, ArrayList<Delivery> deliveriesMade){
+        if(flightPath.size() != deliveriesMade.size()){
+            System.err.println("Fatal error in Database.insertFlightPaths: size of positions and delivered must match.");
+            System.exit(1);
+        }
+
+        createTable(getFlightPathTable());
+        System.out.println(String.format("No of position arrays: %d", flightPath.size()));
+        System.out.println(String.format("No of deliveries: %d", deliveriesMade.size()));
+        appendFlightPaths(flightPath, deliveriesMade, true);
+    }
+
+    /**
+     * Adds the moves made by the drone in delivering some orders to the flightpath table, which must already exist, in
+     * batches of batchSize records in one transaction, printing each move as it is added.
+     *
+     * Each move in 2D space has its own record added to the table, with a record for a hover move also added at the
+     * end of every delivery, but not at the end of the drone's return to base. If the flight path is stored compactly,
+     * each delivery has a single record instead, holding the same moves.
+     *
+     * @param flightPath the moves made to complete each order, as in insertFlightPaths
+     * @param deliveriesMade the orders delivered by the drone, whose moves are specified in positions
+     * @param endsAtBase true if the last FlightPath is the drone's return to base, with a dud delivery
+     */
+    public static void appendFlightPaths(List<FlightPath> flightPath, List<Delivery> deliveriesMade, boolean endsAtBase){
+        if(flightPath.size() != deliveriesMade.size()){
+            System.err.println("Fatal error in Database.appendFlightPaths: size of positions and delivered must match.");
+            System.exit(1);
+        }
+
+        Connection conn = makeConnection();
         try{
-            if(flightPath.size() != deliveriesMade.size()){
-                System.err.println("Fatal error in Database.insertFlightPaths: size of positions and delivered must match.");
-                System.exit(1);
-            }
+            beginWrite(conn);
+            addFlightPathRecords(conn, flightPath, deliveriesMade, endsAtBase, true);
+            endWrite(conn);
+        } catch (SQLException e) {
+            abortWrite(conn);
+            System.err.println("Fatal error in Database.appendFlightPaths: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Adds orders to the deliveries table and the moves made in delivering them to the flightpath table, both of
+     * which must already exist, together in one transaction on one connection, so that either both tables gain their
+     * records or neither does; even if records are otherwise unbatched.
+     *
+     * The moves are not printed, as the records may be written in the background while the drone is still flying.
+     *
+     * @param ordersDelivered the orders to be added to the deliveries table as records
+     * @param flightPath the moves made to complete each order, as in insertFlightPaths
+     * @param deliveriesMade the deliveries whose moves are specified in flightPath; ordersDelivered, followed by a dud
+     *                       delivery if endsAtBase
+     * @param endsAtBase true if the last FlightPath is the drone's return to base, with a dud delivery
+     */
+    public static void appendDeliveriesAndFlightPaths(List<Delivery> ordersDelivered, List<FlightPath> flightPath,
+                                                      List<Delivery> deliveriesMade, boolean endsAtBase){
+        if(flightPath.size() != deliveriesMade.size()){
+            System.err.println("Fatal error in Database.appendDeliveriesAndFlightPaths: size of positions and delivered must match.");
+            System.exit(1);
+        }
 
-            createTable(FLIGHTPATH);
-            System.out.println(String.format("No of position arrays: %d", flightPath.size()));
-            System.out.println(String.format("No of deliveries: %d", deliveriesMade.size()));
+        Connection conn = makeConnection();
+        try{
+            conn.setAutoCommit(false);
+            addDeliveryRecords(conn, ordersDelivered);
+            addFlightPathRecords(conn, flightPath, deliveriesMade, endsAtBase, false);
+            endWrite(conn);
+        } catch (SQLException e) {
+            abortWrite(conn);
+            System.err.println("Fatal error in Database.appendDeliveriesAndFlightPaths: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            releaseConnection(conn);
+        }
+    }
 
-            for(int i = 0; i < deliveriesMade.size(); i++){
-                Delivery d = deliveriesMade.get(i);
-                ArrayList<LongLat> oPositions = flightPath.get(i);
+    /**
+     * Adds a record to the deliveries table for each order, in batches of batchSize records, sending the last batch
+     * before returning.
+     *
+     * @param conn the connection on which the records are written
+     * @param ordersDelivered the orders to be added to the deliveries table as records
+     * @throws SQLException if a record or batch cannot be inserted
+     */
+    private static void addDeliveryRecords(Connection conn, List<Delivery> ordersDelivered) throws SQLException {
+        PreparedStatement statement = null;
+        int pending = 0;
+        for (Delivery d : ordersDelivered) {
+            statement = buildInsertDeliveryQuery(conn, d.orderDelivered);
+            pending = addRecord(statement, pending);
+        }
+        sendBatch(statement, pending);
+    }
 
-                for(int j = 0; j < oPositions.size()-1; j++){
-                    LongLat start = oPositions.get(j);
-                    LongLat end = oPositions.get(j+1);
-                    int bearing = start.getBearingTo(end);
-                    System.out.println(start.toString());
-                    System.out.println(end.toString());
+    /**
+     * Adds the records of the moves made in delivering some orders to the flightpath table, or the flightpathcompact
+     * table if the flight path is stored compactly, in batches of batchSize records, sending the last batch before
+     * returning.
+     *
+     * @param conn the connection on which the records are written
+     * @param flightPath the moves made to complete each order, as in insertFlightPaths
+     * @param deliveriesMade the orders delivered by the drone, whose moves are specified in positions
+     * @param endsAtBase true if the last FlightPath is the drone's return to base, with a dud delivery
+     * @param printMoves true if each move is to be printed as its record is added to the flightpath table
+     * @throws SQLException if a record or batch cannot be inserted
+     */
+    private static void addFlightPathRecords(Connection conn, List<FlightPath> flightPath, List<Delivery> deliveriesMade,
+                                             boolean endsAtBase, boolean printMoves) throws SQLException {
+        PreparedStatement statement = null;
+        int pending = 0;
+        for(int i = 0; i < deliveriesMade.size(); i++){
+            Delivery d = deliveriesMade.get(i);
+            FlightPath oPositions = flightPath.get(i);
+            if(flightPathSchema == FlightPathSchema.COMPACT){
+                // A return to base of no moves has nothing to store.
+                if(!oPositions.isEmpty()){
+                    boolean hoverAtEnd = !(endsAtBase && i == deliveriesMade.size()-1);
+                    statement = buildInsertCompactPathQuery(conn, oPositions, hoverAtEnd, d.orderDelivered.id);
+                    pending = addRecord(statement, pending);
+                }
+                continue;
+            }
+
+            for(int j = 0; j < oPositions.size()-1; j++){
+                double startLng = oPositions.getLng(j);
+                double startLat = oPositions.getLat(j);
+                double endLng = oPositions.getLng(j+1);
+                double endLat = oPositions.getLat(j+1);
+                int bearing = LongLat.getBearing(startLng, startLat, endLng, endLat);
+                if(printMoves){
+                    System.out.println(LongLat.toString(startLng, startLat));
+                    System.out.println(LongLat.toString(endLng, endLat));
                     System.out.println(bearing);
                     System.out.println("\n");
-
-                    buildInsertMoveQuery(start, end, bearing, d.orderDelivered.id).execute();
                 }
-                // This code adds a hover move at the end of each delivery.
-                // We don't need to hover upon returning to Appleton tower hence the if statement.
-                if(!(i == deliveriesMade.size()-1)) {
-                    LongLat oFinalPositon = oPositions.get(oPositions.size() - 1);
-                    buildInsertMoveQuery(oFinalPositon, oFinalPositon, LongLat.JUNK_ANGLE, d.orderDelivered.id).execute();
-                    System.out.println(oFinalPositon.toString());
-                    System.out.println(oFinalPositon.toString());
+
+                statement = buildInsertMoveQuery(conn, startLng, startLat, endLng, endLat, bearing, d.orderDelivered.id);
+                pending = addRecord(statement, pending);
+            }
+            // This code adds a hover move at the end of each delivery.
+            // We don't need to hover upon returning to Appleton tower hence the if statement.
+            if(!(endsAtBase && i == deliveriesMade.size()-1)) {
+                double finalLng = oPositions.getLng(oPositions.size() - 1);
+                double finalLat = oPositions.getLat(oPositions.size() - 1);
+                statement = buildInsertMoveQuery(conn, finalLng, finalLat, finalLng, finalLat, LongLat.JUNK_ANGLE, d.orderDelivered.id);
+                pending = addRecord(statement, pending);
+                if(printMoves){
+                    System.out.println(LongLat.toString(finalLng, finalLat));
+                    System.out.println(LongLat.toString(finalLng, finalLat));
                     System.out.println(LongLat.JUNK_ANGLE);
+                }
+
+            }
+        }
+        sendBatch(statement, pending);
+    }
 
+    /**
+     * Reads the drone's flight path back from the database, one record per move, whichever way it is stored.
+     *
+     * If the flight path is stored compactly, each delivery's moves are expanded with CompactFlightPath.decode, so the
+     * records are those insertFlightPaths would otherwise have stored, in the order the moves were made. The
+     * flightpath table keeps no such order, so if the flight path is stored there, its records are given in whatever
+     * order the database returns them.
+     *
+     * @return the records
+     */
+    public static ArrayList<FlightPathRecord> readFlightPath(){
+        Connection conn = makeConnection();
+        ArrayList<FlightPathRecord> records = new ArrayList<>();
+        try {
+            if(flightPathSchema == FlightPathSchema.COMPACT){
+                try (ResultSet rs = pool.prepare(conn, READ_COMPACT_PATHS_QUERY_STR).executeQuery()) {
+                    while (rs.next()) {
+                        CompactFlightPath.decode(rs.getString("orderNo"), rs.getDouble("startLongitude"),
+                                rs.getDouble("startLatitude"), rs.getBytes("moves"), records);
+                    }
+                }
+            }else{
+                try (ResultSet rs = pool.prepare(conn, READ_FLIGHTPATH_QUERY_STR).executeQuery()) {
+                    while (rs.next()) {
+                        records.add(new FlightPathRecord(rs.getString("orderNo"), rs.getDouble("fromLongitude"),
+                                rs.getDouble("fromLatitude"), rs.getInt("angle"), rs.getDouble("toLongitude"),
+                                rs.getDouble("toLatitude")));
+                    }
                 }
             }
+            return records;
         } catch (SQLException e) {
-            System.err.println("Fatal error in Database.insertFlightPath: " + e.getMessage());
+            System.err.println("Fatal error in Database.readFlightPath: " + e.getMessage());
             System.exit(1);
+            // Return statement required by compiler; never actually returns.
+            return null;
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Starts writing records on a connection; in one transaction unless they are unbatched.
+     *
+     * @param conn the connection on which the records are to be written
+     * @throws SQLException if auto-commit cannot be turned off
+     */
+    private static void beginWrite(Connection conn) throws SQLException {
+        conn.setAutoCommit(batchSize == UNBATCHED);
+    }
+
+    /**
+     * Adds a record whose parameters have been set to the batch of a statement, sending the batch to the database
+     * once it holds batchSize records; or if records are unbatched, inserts it at once.
+     *
+     * @param statement the statement, with its parameters set
+     * @param pending the number of records in the statement's batch before this one
+     * @return the number of records in the statement's batch after this one
+     * @throws SQLException if the record or batch cannot be inserted
+     */
+    private static int addRecord(PreparedStatement statement, int pending) throws SQLException {
+        if(batchSize == UNBATCHED){
+            statement.execute();
+            return 0;
+        }
+        statement.addBatch();
+        if(pending + 1 < batchSize){
+            return pending + 1;
+        }
+        statement.executeBatch();
+        return 0;
+    }
+
+    /**
+     * Sends the last batch of records added to a statement, if any are waiting.
+     *
+     * @param statement the statement to which the records were added, as passed to addRecord; null if none were
+     * @param pending the number of records in the statement's batch
+     * @throws SQLException if the batch cannot be inserted
+     */
+    private static void sendBatch(PreparedStatement statement, int pending) throws SQLException {
+        if(pending > 0){
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Finishes writing records on a connection, committing the transaction if there is one.
+     *
+     * @param conn the connection on which the records were written
+     * @throws SQLException if the transaction cannot be committed
+     */
+    private static void endWrite(Connection conn) throws SQLException {
+        if(!conn.getAutoCommit()){
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Gives up writing records on a connection, rolling back the transaction so that none of its records are kept,
+     * and returning the connection to auto-commit.
+     *
+     * Errors here are ignored, as the write has already failed.
+     *
+     * @param conn the connection on which the records were being written
+     */
+    private static void abortWrite(Connection conn){
+        try {
+            if(!conn.getAutoCommit()){
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException ignored) {
         }
     }
 
@@ -321,13 +703,14 @@ public class Database {
      * Builds a PreparedStatement object that will be used to insert the details of a delivery made
      * into the deliveries table.
      *
+     * @param conn the connection on which the record is to be inserted
      * @param o the order that has been delivered
-     * @return a PreparedStatement object, initialised with the relevant details of the order
+     * @return a PreparedStatement object, initialised with the relevant details of the order; cached with conn, so
+     *         not to be closed
      */
-    private static PreparedStatement buildInsertDeliveryQuery(Order o){
+    private static PreparedStatement buildInsertDeliveryQuery(Connection conn, Order o){
         try{
-            Connection conn = makeConnection();
-            PreparedStatement psInsertDeliveryQuery = conn.prepareStatement(INSERT_DELIVERY_QUERY);
+            PreparedStatement psInsertDeliveryQuery = pool.prepare(conn, INSERT_DELIVERY_QUERY);
             psInsertDeliveryQuery.setString(1, o.id);
             psInsertDeliveryQuery.setString(2, o.deliveryLoc);
             psInsertDeliveryQuery.setInt(3, o.value);
@@ -343,23 +726,26 @@ public class Database {
      * Builds a PreparedStatement object that will be used to insert the details of a move made by the drone into the
      * flightpath table.
      *
-     * @param start a What3Words.LongLat object, representing the point at which the drone started the move
-     * @param end a What3Words.LongLat object, representing the point at which the drone ended the move
+     * @param conn the connection on which the record is to be inserted
+     * @param startLng the longitude of the point at which the drone started the move
+     * @param startLat the latitude of the point at which the drone started the move
+     * @param endLng the longitude of the point at which the drone ended the move
+     * @param endLat the latitude of the point at which the drone ended the move
      * @param bearing the bearing from start to end
      * @param orderId the ID of the order being processed at the time of the move
      * @return a PreparedStatement object, initialised with the relevant details of the move made and the order it was
-     *         made for
+     *         made for; cached with conn, so not to be closed
      */
-    private static PreparedStatement buildInsertMoveQuery(LongLat start, LongLat end, int bearing, String orderId){
+    private static PreparedStatement buildInsertMoveQuery(Connection conn, double startLng, double startLat,
+                                                          double endLng, double endLat, int bearing, String orderId){
         try{
-            Connection conn = makeConnection();
-            PreparedStatement psInsertMoveQuery = conn.prepareStatement(INSERT_MOVE_QUERY);
+            PreparedStatement psInsertMoveQuery = pool.prepare(conn, INSERT_MOVE_QUERY);
             psInsertMoveQuery.setString(1, orderId);
-            psInsertMoveQuery.setDouble(2, start.lng);
-            psInsertMoveQuery.setDouble(3, start.lat);
+            psInsertMoveQuery.setDouble(2, startLng);
+            psInsertMoveQuery.setDouble(3, startLat);
             psInsertMoveQuery.setInt(4, bearing);
-            psInsertMoveQuery.setDouble(5, end.lng);
-            psInsertMoveQuery.setDouble(6, end.lat);
+            psInsertMoveQuery.setDouble(5, endLng);
+            psInsertMoveQuery.setDouble(6, endLat);
             return psInsertMoveQuery;
         } catch (SQLException e) {
             System.err.println("Fatal error in Database.buildInsertMoveQuery: " + e.getMessage());
@@ -367,9 +753,31 @@ public class Database {
             return null;
         }
     }
-}
-
-
-
-
 
+    /**
+     * Builds a PreparedStatement object that will be used to insert the moves made by the drone in delivering an
+     * order into the flightpath table, as a single record.
+     *
+     * @param conn the connection on which the record is to be inserted
+     * @param positions the points visited by the drone in making the delivery, at least one
+     * @param hoverAtEnd true if a hover move is to be added after the last point
+     * @param orderId the ID of the order delivered
+     * @return a PreparedStatement object, initialised with the start and packed moves of the delivery; cached with
+     *         conn, so not to be closed
+     */
+    private static PreparedStatement buildInsertCompactPathQuery(Connection conn, FlightPath positions, boolean hoverAtEnd,
+                                                                 String orderId){
+        try{
+            PreparedStatement psInsertCompactPathQuery = pool.prepare(conn, INSERT_COMPACT_PATH_QUERY);
+            psInsertCompactPathQuery.setString(1, orderId);
+            psInsertCompactPathQuery.setDouble(2, positions.getLng(0));
+            psInsertCompactPathQuery.setDouble(3, positions.getLat(0));
+            psInsertCompactPathQuery.setBytes(4, CompactFlightPath.encode(positions, hoverAtEnd));
+            return psInsertCompactPathQuery;
+        } catch (SQLException e) {
+            System.err.println("Fatal error in Database.buildInsertCompactPathQuery: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+}
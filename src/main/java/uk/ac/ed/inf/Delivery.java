@@ -1,13 +1,11 @@
 package uk.ac.ed.inf;
 
-import java.util.ArrayList;
-
 /**
  * Represents a delivery made by the drone.
  */
 public class Delivery {
     /** The points visited by the drone in making the delivery */
-    public final ArrayList<LongLat> pointsVisited;
+    public final FlightPath pointsVisited;
     /** The order being delivered */
     public final Order orderDelivered;
 
@@ -17,7 +15,7 @@ public class Delivery {
      * @param pointsVisited the points to be visited by the drone when making the delivery
      * @param orderDelivered the order being delivered
      */
-    public Delivery(ArrayList<LongLat> pointsVisited, Order orderDelivered){
+    public Delivery(FlightPath pointsVisited, Order orderDelivered){
         this.pointsVisited = pointsVisited;
         this.orderDelivered = orderDelivered;
     }
@@ -26,7 +24,7 @@ public class Delivery {
      * Public constructor to instantiate a new 'dud' delivery.
      */
     public Delivery(){
-        this.pointsVisited = new ArrayList<>();
+        this.pointsVisited = new FlightPath();
         this.orderDelivered = new Order();
     }
 }
@@ -0,0 +1,35 @@
+package uk.ac.ed.inf;
+
+/**
+ * The outcome of evaluating a delivery from a DroneState with Drone.evaluate: whether the drone could make it, what
+ * it would take from the battery, and where the drone would be afterwards.
+ */
+public final class DeliveryEvaluation {
+    /** Whether the drone has the battery to make the delivery and return to base after */
+    public final boolean feasible;
+    /**
+     * The number of moves the delivery takes from the battery, including those back to base; if the delivery is not
+     * feasible, the number it was found to need, which may be found from the weights of the graph without simulating
+     * any move
+     */
+    public final int moves;
+    /** The state of the drone after the delivery; the state it started in if the delivery is not feasible */
+    public final DroneState endState;
+    /** The points the drone visits making the delivery; empty if the delivery is not feasible */
+    public final FlightPath pointsVisited;
+
+    /**
+     * Constructor to instantiate a new DeliveryEvaluation instance.
+     *
+     * @param feasible whether the drone has the battery to make the delivery and return to base after
+     * @param moves the number of moves the delivery takes, or needs at least if it is not feasible
+     * @param endState the state of the drone after the delivery
+     * @param pointsVisited the points the drone visits making the delivery
+     */
+    public DeliveryEvaluation(boolean feasible, int moves, DroneState endState, FlightPath pointsVisited){
+        this.feasible = feasible;
+        this.moves = moves;
+        this.endState = endState;
+        this.pointsVisited = pointsVisited;
+    }
+}
@@ -0,0 +1,443 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses which of a day's orders the drone delivers, and in what order, to deliver as much value as it can on one
+ * charge of its battery.
+ *
+ * This is a prize-collecting routing problem: every order is worth its value, and what it takes from the battery
+ * depends on where the drone comes from. The charge of each order from each place the drone can be before it, the
+ * base or the delivery location of another order, is found once from the weights of the LocationGraph, counted as
+ * Drone.makeDelivery counts it; the moves of the delivery, one for each shop but the first, and the distance back to
+ * base, which makeDelivery takes from the battery with every delivery. A plan fits the battery if the charges of its
+ * orders, in turn, add up to no more than the moves the drone starts with.
+ *
+ * Plans are improved by simulated annealing, starting from the greedy plan App used to make, which tries the orders
+ * from the most valuable down and keeps each that fits. Each step tries one of inserting an order not in the plan,
+ * removing one, swapping one for one not in the plan, moving one elsewhere in the plan (or-opt) or reversing a run of
+ * the plan (2-opt). The anneal is restarted from the best plan found, in several chains at once, each with its own
+ * random numbers, either a fixed number of times, so that the same seed always gives the same plan, or until a
+ * wall-clock budget runs out. A plan with more value is always better, and of 2 of the same value, the one using
+ * fewer moves is.
+ */
+public class DeliveryPlanner {
+    /** The default number of chains of anneals run when planning for a fixed number of restarts */
+    public static final int DEFAULT_CHAINS = 4;
+    /** The default number of anneals in each chain when planning for a fixed number of restarts */
+    public static final int DEFAULT_RESTARTS = 100;
+    /** The default seed of the random numbers of the first chain */
+    public static final long DEFAULT_SEED = 0;
+    /** The number of steps of each anneal before it is restarted */
+    private static final int STEPS_PER_RESTART = 20000;
+    /** The temperature at the start of each anneal, as a fraction of the mean value of an order */
+    private static final double START_TEMPERATURE = 0.3;
+    /** The temperature at the end of each anneal, as a fraction of the mean value of an order */
+    private static final double END_TEMPERATURE = 0.001;
+    /** The number of steps between checks of the clock */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+    /** The number of kinds of step an anneal tries */
+    private static final int NUM_STEP_KINDS = 5;
+    /** The deadline of chains of anneals limited only by their number of restarts */
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** The orders to be planned */
+    private final List<Order> orders;
+    /** The value of each order */
+    private final int[] values;
+    /**
+     * The charge of each order from each place the drone can be before it, indexed first by 0 for the base or 1 more
+     * than the index of the order before, then by the index of the order; ShortestPaths.NO_PATH if it cannot be made
+     */
+    private final int[][] charges;
+    /** The number of moves the drone starts with */
+    private final int moveBudget;
+    /** The mean value of an order, by which temperatures are scaled */
+    private final double meanValue;
+
+    /**
+     * Constructor to prepare to plan a day's orders, finding the charge of every order from every place the drone
+     * can be before it.
+     *
+     * @param orders the orders to be planned
+     * @param pickUpLocs the w3w addresses of the shops of each order, in the same order as orders
+     * @param lg the graph through which the drone flies, to which every address of the orders has been attached
+     * @param baseAddress the w3w address of the drone's base, from which it starts
+     * @param moveBudget the number of moves the drone starts with
+     */
+    public DeliveryPlanner(List<Order> orders, List<? extends List<String>> pickUpLocs, LocationGraph lg,
+                           String baseAddress, int moveBudget){
+        int numOrders = orders.size();
+        this.orders = new ArrayList<>(orders);
+        this.moveBudget = moveBudget;
+        this.values = new int[numOrders];
+        this.charges = new int[numOrders + 1][numOrders];
+        long totalValue = 0;
+        for(int i = 0; i < numOrders; i++){
+            values[i] = orders.get(i).value;
+            totalValue += values[i];
+        }
+        this.meanValue = Math.max(1, (double) totalValue / Math.max(1, numOrders));
+
+        for(int to = 0; to < numOrders; to++){
+            Order order = orders.get(to);
+            List<String> shops = pickUpLocs.get(to);
+            int toBase = lg.getDistanceTo(order.deliveryLoc, baseAddress);
+            for(int from = 0; from <= numOrders; from++){
+                String start = (from == 0) ? baseAddress : orders.get(from - 1).deliveryLoc;
+                long charge = (long) lg.getDeliveryWeight(start, shops, order.deliveryLoc) + (shops.size() - 1) + toBase;
+                charges[from][to] = (int) Math.min(ShortestPaths.NO_PATH, charge);
+            }
+        }
+    }
+
+    /**
+     * Plans the orders greedily, as App used to; trying them from the most valuable down, in the order given among
+     * those of equal value, and keeping each that fits the battery.
+     *
+     * @return the indices of the orders planned, in the order they are to be delivered
+     */
+    public int[] planGreedy(){
+        Integer[] byValue = new Integer[orders.size()];
+        for(int i = 0; i < byValue.length; i++){
+            byValue[i] = i;
+        }
+        Arrays.sort(byValue, Comparator.comparingInt((Integer i) -> values[i]).reversed());
+
+        int[] plan = new int[orders.size()];
+        int length = 0;
+        int moves = 0;
+        for(int i : byValue){
+            int charge = charges[(length == 0) ? 0 : plan[length-1] + 1][i];
+            if(moves + charge <= moveBudget){
+                plan[length++] = i;
+                moves += charge;
+            }
+        }
+        return Arrays.copyOf(plan, length);
+    }
+
+    /**
+     * Plans the orders by improving on the greedy plan with simulated annealing until a wall-clock budget runs out,
+     * running one chain of anneals on each thread.
+     *
+     * The plan returned is never worse than the greedy one. As the number of steps taken depends on the speed of the
+     * machine, the plan found may differ from run to run; planForRestarts gives the same plan every time.
+     *
+     * @param parallelism the number of threads used, each running its own chain of anneals
+     * @param timeBudgetMillis the wall-clock time in milliseconds after which no new step is taken
+     * @param seed the seed of the random numbers of the first thread; the others use the seeds following it
+     * @return the indices of the orders planned, in the order they are to be delivered
+     */
+    public int[] plan(int parallelism, long timeBudgetMillis, long seed){
+        long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+        return plan(parallelism, parallelism, Integer.MAX_VALUE, deadline, seed, "plan");
+    }
+
+    /**
+     * Plans the orders by improving on the greedy plan with a fixed number of anneals in each of a fixed number of
+     * chains, shared between the threads.
+     *
+     * The plan returned is never worse than the greedy one. It depends only on the orders, chains, restarts and seed,
+     * not on the number of threads or the speed of the machine, so the same arguments always give the same plan.
+     *
+     * @param parallelism the number of threads among which the chains are shared
+     * @param chains the number of chains of anneals run
+     * @param restarts the number of anneals in each chain, each restarted from the best plan the chain has found
+     * @param seed the seed of the random numbers of the first chain; the others use the seeds following it
+     * @return the indices of the orders planned, in the order they are to be delivered
+     */
+    public int[] planForRestarts(int parallelism, int chains, int restarts, long seed){
+        if(chains < 1 || restarts < 0){
+            System.err.println(String.format("Fatal error in DeliveryPlanner.planForRestarts: need at least 1 chain and 0 restarts, not %d and %d.", chains, restarts));
+            System.exit(1);
+            return null;
+        }
+        return plan(parallelism, chains, restarts, NO_DEADLINE, seed, "planForRestarts");
+    }
+
+    /**
+     * Runs chains of anneals from the greedy plan on a pool of threads, and picks the best plan found.
+     *
+     * Of plans of the same score, the greedy plan is kept over any chain's, and an earlier chain's over a later one's,
+     * so the pick does not depend on the order in which the chains finish.
+     *
+     * @param parallelism the number of threads used
+     * @param chains the number of chains of anneals run
+     * @param restarts the number of anneals in each chain
+     * @param deadline the value of System.nanoTime after which no new step is taken, or NO_DEADLINE
+     * @param seed the seed of the random numbers of the first chain; the others use the seeds following it
+     * @param caller the name of the public method called, for error messages
+     * @return the indices of the orders planned, in the order they are to be delivered
+     */
+    private int[] plan(int parallelism, int chains, int restarts, long deadline, long seed, String caller){
+        if(parallelism < 1){
+            System.err.println(String.format("Fatal error in DeliveryPlanner.%s: parallelism must be at least 1, not %d.", caller, parallelism));
+            System.exit(1);
+            return null;
+        }
+        int[] greedy = planGreedy();
+        int[][] bestOfChain = new int[chains][];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, chains).parallel()
+                    .forEach(c -> bestOfChain[c] = anneal(greedy, new Random(seed + c), restarts, deadline))).get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println(String.format("Fatal error in DeliveryPlanner.%s: %s", caller, e.getMessage()));
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+
+        int[] best = greedy;
+        for(int[] plan : bestOfChain){
+            if(getScore(plan, plan.length) > getScore(best, best.length)){
+                best = plan;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the total value of the orders of a plan.
+     *
+     * @param plan the indices of the orders planned, in order
+     * @return the total value of the orders, in pence
+     */
+    public int getValue(int[] plan){
+        int value = 0;
+        for(int i : plan){
+            value += values[i];
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of moves a plan is estimated to take from the battery.
+     *
+     * @param plan the indices of the orders planned, in order
+     * @return the total charge of the orders, or ShortestPaths.NO_PATH if any cannot be made
+     */
+    public int getMoves(int[] plan){
+        return (int) Math.min(ShortestPaths.NO_PATH, getMoves(plan, plan.length));
+    }
+
+    /**
+     * Gets the orders of a plan.
+     *
+     * @param plan the indices of the orders planned, in order
+     * @return the orders, in the order they are to be delivered
+     */
+    public ArrayList<Order> getOrders(int[] plan){
+        ArrayList<Order> planned = new ArrayList<>(plan.length);
+        for(int i : plan){
+            planned.add(orders.get(i));
+        }
+        return planned;
+    }
+
+    /**
+     * Runs a chain of anneals, each restarted from the best plan found so far, until a number of them have run or a
+     * deadline passes.
+     *
+     * @param start the plan from which the first anneal starts
+     * @param random the random numbers used
+     * @param restarts the number of anneals run
+     * @param deadline the value of System.nanoTime after which no new step is taken, or NO_DEADLINE
+     * @return the best plan found
+     */
+    private int[] anneal(int[] start, Random random, int restarts, long deadline){
+        int numOrders = orders.size();
+        int[] best = start.clone();
+        long bestScore = getScore(best, best.length);
+        int[] plan = new int[numOrders];
+        int[] candidate = new int[numOrders];
+        boolean[] planned = new boolean[numOrders];
+
+        for(int restart = 0; restart < restarts && !isPast(deadline); restart++){
+            int length = best.length;
+            System.arraycopy(best, 0, plan, 0, length);
+            Arrays.fill(planned, false);
+            for(int i = 0; i < length; i++){
+                planned[plan[i]] = true;
+            }
+            long score = bestScore;
+
+            for(int step = 0; step < STEPS_PER_RESTART; step++){
+                if(step % CLOCK_CHECK_INTERVAL == 0 && isPast(deadline)){
+                    break;
+                }
+                int candidateLength = proposeStep(plan, length, planned, candidate, random);
+                if(candidateLength < 0){
+                    continue;
+                }
+                long candidateScore = getScore(candidate, candidateLength);
+                if(candidateScore < 0){
+                    continue;
+                }
+                double temperature = meanValue * START_TEMPERATURE
+                        * Math.pow(END_TEMPERATURE / START_TEMPERATURE, (double) step / STEPS_PER_RESTART);
+                long delta = candidateScore - score;
+                if(delta >= 0 || random.nextDouble() < Math.exp(delta / (temperature * (moveBudget + 1)))){
+                    for(int i = 0; i < length; i++){
+                        planned[plan[i]] = false;
+                    }
+                    System.arraycopy(candidate, 0, plan, 0, candidateLength);
+                    length = candidateLength;
+                    for(int i = 0; i < length; i++){
+                        planned[plan[i]] = true;
+                    }
+                    score = candidateScore;
+                    if(score > bestScore){
+                        best = Arrays.copyOf(plan, length);
+                        bestScore = score;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks whether a deadline has passed; NO_DEADLINE never does, and the clock is not read for it.
+     *
+     * @param deadline the value of System.nanoTime after which no new step is taken, or NO_DEADLINE
+     * @return true if the deadline has passed
+     */
+    private static boolean isPast(long deadline){
+        return deadline != NO_DEADLINE && System.nanoTime() >= deadline;
+    }
+
+    /**
+     * Writes a plan changed by one random step of an anneal into another array.
+     *
+     * @param plan the plan
+     * @param length the number of orders in the plan
+     * @param planned whether each order is in the plan, indexed by order
+     * @param candidate the array into which the changed plan is written
+     * @param random the random numbers used
+     * @return the number of orders in the changed plan, or -1 if the step chosen cannot be taken
+     */
+    private int proposeStep(int[] plan, int length, boolean[] planned, int[] candidate, Random random){
+        int numOrders = orders.size();
+        System.arraycopy(plan, 0, candidate, 0, length);
+        switch(random.nextInt(NUM_STEP_KINDS)){
+            case 0:{
+                // Insert an order not in the plan.
+                if(length == numOrders){
+                    return -1;
+                }
+                int order = pickUnplanned(planned, numOrders - length, random);
+                int at = random.nextInt(length + 1);
+                System.arraycopy(plan, at, candidate, at + 1, length - at);
+                candidate[at] = order;
+                return length + 1;
+            }
+            case 1:{
+                // Remove an order.
+                if(length == 0){
+                    return -1;
+                }
+                int at = random.nextInt(length);
+                System.arraycopy(plan, at + 1, candidate, at, length - at - 1);
+                return length - 1;
+            }
+            case 2:{
+                // Swap an order for one not in the plan.
+                if(length == 0 || length == numOrders){
+                    return -1;
+                }
+                candidate[random.nextInt(length)] = pickUnplanned(planned, numOrders - length, random);
+                return length;
+            }
+            case 3:{
+                // Move an order elsewhere in the plan, which may be its end.
+                if(length < 2){
+                    return -1;
+                }
+                int from = random.nextInt(length);
+                int to = random.nextInt(length);
+                int order = plan[from];
+                System.arraycopy(plan, from + 1, candidate, from, length - from - 1);
+                System.arraycopy(candidate, to, candidate, to + 1, length - 1 - to);
+                candidate[to] = order;
+                return length;
+            }
+            default:{
+                // Reverse a run of the plan.
+                if(length < 2){
+                    return -1;
+                }
+                int first = random.nextInt(length - 1);
+                int last = first + 1 + random.nextInt(length - first - 1);
+                for(int i = first, j = last; i < j; i++, j--){
+                    candidate[i] = plan[j];
+                    candidate[j] = plan[i];
+                }
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Picks an order not in a plan at random.
+     *
+     * @param planned whether each order is in the plan, indexed by order
+     * @param numUnplanned the number of orders not in the plan, which must be at least 1
+     * @param random the random numbers used
+     * @return the index of the order picked
+     */
+    private static int pickUnplanned(boolean[] planned, int numUnplanned, Random random){
+        int skip = random.nextInt(numUnplanned);
+        for(int i = 0; i < planned.length; i++){
+            if(!planned[i] && skip-- == 0){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scores a plan so that one with more value always scores higher, and of 2 with the same value, the one using
+     * fewer moves does.
+     *
+     * @param plan the indices of the orders planned, in order
+     * @param length the number of orders in the plan
+     * @return the score of the plan, or -1 if it does not fit the battery
+     */
+    private long getScore(int[] plan, int length){
+        long moves = getMoves(plan, length);
+        if(moves > moveBudget){
+            return -1;
+        }
+        long value = 0;
+        for(int i = 0; i < length; i++){
+            value += values[plan[i]];
+        }
+        return value * (moveBudget + 1) - moves;
+    }
+
+    /**
+     * Adds up the charges of the orders of a plan.
+     *
+     * @param plan the indices of the orders planned, in order
+     * @param length the number of orders in the plan
+     * @return the total charge of the orders
+     */
+    private long getMoves(int[] plan, int length){
+        long moves = 0;
+        int from = 0;
+        for(int i = 0; i < length; i++){
+            moves += charges[from][plan[i]];
+            from = plan[i] + 1;
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,197 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes deliveries and the drone's flight path to the database in the background, as the deliveries are made.
+ *
+ * Each delivery is handed to the writer as soon as the drone makes it, and queued for a single writer thread. The
+ * thread creates the deliveries and flightpath tables, then repeatedly takes every delivery waiting, up to
+ * MAX_CHUNK at once, and adds them to both tables together in one transaction, so that no delivery is ever stored
+ * without its flight path. So the database is written while the drone's route is still being planned, and while the
+ * GeoJSON output is written once it has been.
+ *
+ * The queue is bounded: if the database falls behind, handing over a delivery blocks until there is room, rather
+ * than letting the queue grow without limit. The drone's return to base is handed over last, after which the writer
+ * writes whatever is still queued and stops; awaitCompletion waits for that, so that no record is lost when the
+ * application exits. close stops the writer in the same way if the return to base is never handed over, and must be
+ * called once the writer is no longer needed, as its thread otherwise keeps the application running.
+ *
+ * If the writer thread fails, the failure is kept and reported as a fatal error by the next call to hand over a
+ * delivery or to awaitCompletion, rather than leaving either waiting on a thread that has stopped.
+ */
+public class DeliveryWriter {
+    /** The default number of deliveries that can wait to be written before handing over another blocks */
+    public static final int DEFAULT_CAPACITY = 64;
+    /** The most deliveries written in one transaction */
+    private static final int MAX_CHUNK = 256;
+    /** The delivery queued after the return to base, telling the writer thread to stop */
+    private static final Delivery END_OF_DELIVERIES = new Delivery();
+    /** The longest time in milliseconds waited for room in the queue before checking the writer thread is running */
+    private static final long PUT_POLL_MILLIS = 100;
+
+    /** The deliveries waiting to be written */
+    private final ArrayBlockingQueue<Delivery> queue;
+    /** The thread writing the deliveries */
+    private final Thread thread;
+    /** The dud delivery carrying the drone's return to base; null until it is handed over */
+    private volatile Delivery returnToBase = null;
+    /** The number of deliveries written, not counting the return to base */
+    private volatile int numWritten = 0;
+    /** What stopped the writer thread before the end of the deliveries; null unless it failed */
+    private volatile Throwable failure = null;
+    /** Whether the end of the deliveries has been queued; only used by the thread handing deliveries over */
+    private boolean ended = false;
+
+    /**
+     * Constructor to instantiate a DeliveryWriter with room for DEFAULT_CAPACITY waiting deliveries, and start its
+     * thread.
+     */
+    public DeliveryWriter(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to instantiate a DeliveryWriter and start its thread.
+     *
+     * @param capacity the number of deliveries that can wait to be written before handing over another blocks
+     */
+    public DeliveryWriter(int capacity){
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::writeDeliveries, "delivery-writer");
+        this.thread.start();
+    }
+
+    /**
+     * Hands a delivery the drone has made to the writer, waiting for room in the queue if it is full.
+     *
+     * @param delivery the delivery
+     */
+    public void submit(Delivery delivery){
+        put(delivery);
+    }
+
+    /**
+     * Hands the drone's return to base to the writer as the last part of its flight path, after which no more
+     * deliveries can be handed over.
+     *
+     * @param pathToBase the points the drone visits on its way back to base
+     */
+    public void finish(FlightPath pathToBase){
+        Delivery dud = new Delivery(pathToBase, new Order());
+        returnToBase = dud;
+        put(dud);
+        close();
+    }
+
+    /**
+     * Tells the writer thread to stop once the deliveries already handed over are written, if finish has not already
+     * done so; calling it again has no effect.
+     *
+     * Does not wait for the thread to stop, nor report a failure; awaitCompletion does both.
+     */
+    public void close(){
+        if(ended){
+            return;
+        }
+        ended = true;
+        try {
+            while(thread.isAlive() && !(queue.offer(END_OF_DELIVERIES, PUT_POLL_MILLIS, TimeUnit.MILLISECONDS))){
+                // The writer thread is still emptying the queue.
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Fatal error in DeliveryWriter.close: interrupted while waiting for room in the queue.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Waits for every delivery handed over to have been written.
+     *
+     * finish or close must have been called first. If the writer thread failed, the failure is printed and the
+     * application exits.
+     *
+     * @return the number of deliveries written, not counting the return to base
+     */
+    public int awaitCompletion(){
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            System.err.println("Fatal error in DeliveryWriter.awaitCompletion: interrupted before every delivery was written.");
+            System.exit(1);
+        }
+        if(failure != null){
+            System.err.println("Fatal error in DeliveryWriter.awaitCompletion: " + failure);
+            System.exit(1);
+        }
+        return numWritten;
+    }
+
+    /**
+     * Puts a delivery on the queue, waiting for room if it is full.
+     *
+     * If the writer thread stops before there is room, as it does only if it fails, the failure is printed and the
+     * application exits.
+     *
+     * @param delivery the delivery
+     */
+    private void put(Delivery delivery){
+        try {
+            while(!(queue.offer(delivery, PUT_POLL_MILLIS, TimeUnit.MILLISECONDS))){
+                if(!thread.isAlive()){
+                    System.err.println("Fatal error in DeliveryWriter.submit: the writer thread stopped: " + failure);
+                    System.exit(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Fatal error in DeliveryWriter.submit: interrupted while waiting for room in the queue.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs on the writer thread; creates the tables, then writes the deliveries queued in chunks until the end of
+     * the deliveries is reached.
+     *
+     * Anything thrown is kept as the failure of the writer, and stops the thread.
+     */
+    private void writeDeliveries(){
+        try {
+            Database.createTable(Database.DELIVERIES);
+            Database.createTable(Database.getFlightPathTable());
+            ArrayList<Delivery> chunk = new ArrayList<>(MAX_CHUNK);
+            boolean endReached = false;
+            while(!endReached){
+                chunk.clear();
+                chunk.add(queue.take());
+                queue.drainTo(chunk, MAX_CHUNK - 1);
+                endReached = chunk.remove(END_OF_DELIVERIES);
+                writeChunk(chunk);
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    /**
+     * Writes a chunk of deliveries to both tables in one transaction; the last of them may be the return to base,
+     * which is only added to the flightpath table.
+     *
+     * @param chunk the deliveries, in the order they were made
+     */
+    private void writeChunk(ArrayList<Delivery> chunk){
+        if(chunk.isEmpty()){
+            return;
+        }
+        boolean endsAtBase = (chunk.get(chunk.size() - 1) == returnToBase);
+        ArrayList<FlightPath> flightPath = new ArrayList<>(chunk.size());
+        for(Delivery d : chunk){
+            flightPath.add(d.pointsVisited);
+        }
+        Database.appendDeliveriesAndFlightPaths(endsAtBase ? chunk.subList(0, chunk.size() - 1) : chunk, flightPath,
+                chunk, endsAtBase);
+        numWritten += endsAtBase ? chunk.size() - 1 : chunk.size();
+    }
+}
@@ -0,0 +1,268 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shortest paths through a directed graph with integer weights, found with Dijkstra's algorithm from each source
+ * vertex when first asked for.
+ *
+ * The distance to, and previous vertex on the shortest path to, each vertex from a source are kept in memory once
+ * found, so that later queries from the same source are answered without searching the graph again. The results for
+ * the least recently used sources are dropped once they take more than a given amount of memory. Only the edges of
+ * the graph are held otherwise, so memory grows with the number of sources queried rather than with the square of
+ * the number of vertices.
+ */
+public class DijkstraShortestPaths implements ShortestPaths {
+    /** The default most memory the results of searches may take in bytes */
+    public static final long DEFAULT_MAX_CACHE_BYTES = 64L << 20;
+
+    /** The number of vertices in the graph */
+    private final int numVertices;
+    /** The index of the first edge from each vertex, with one extra entry marking the end */
+    private final int[] edgeStarts;
+    /** The vertex at the end of each edge */
+    private final int[] edgeTargets;
+    /** The weight of each edge */
+    private final int[] edgeWeights;
+    /** The results of searches from the most recently queried sources, least recently used first */
+    private final LinkedHashMap<Integer, SearchResult> cache;
+    /** The number of queries answered from the cache */
+    private long cacheHits = 0;
+    /** The number of queries for which the graph had to be searched */
+    private long cacheMisses = 0;
+
+    /**
+     * The result of a search from one source vertex.
+     */
+    private static class SearchResult {
+        /** The shortest distance from the source to each vertex */
+        private final int[] dist;
+        /** The vertex before each vertex on the shortest path to it from the source, or -1 if there is none */
+        private final int[] prev;
+
+        /**
+         * Constructor to hold the result of a search.
+         *
+         * @param dist the shortest distance from the source to each vertex
+         * @param prev the vertex before each vertex on the shortest path to it from the source
+         */
+        private SearchResult(int[] dist, int[] prev){
+            this.dist = dist;
+            this.prev = prev;
+        }
+    }
+
+    /**
+     * Constructor to prepare for searches through a graph.
+     *
+     * The edges of the graph are given in compressed sparse row form; the edges from vertex v are those with
+     * indices from edgeStarts[v] up to, but not including, edgeStarts[v+1]. The results of at least one search are
+     * always kept, whatever maxCacheBytes is.
+     *
+     * @param numVertices the number of vertices in the graph
+     * @param edgeStarts the index of the first edge from each vertex, with one extra entry marking the end
+     * @param edgeTargets the vertex at the end of each edge
+     * @param edgeWeights the weight of each edge, which must not be negative
+     * @param maxCacheBytes the most memory the results of searches may take in bytes
+     */
+    public DijkstraShortestPaths(int numVertices, int[] edgeStarts, int[] edgeTargets, int[] edgeWeights, long maxCacheBytes){
+        this.numVertices = numVertices;
+        this.edgeStarts = edgeStarts;
+        this.edgeTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        long bytesPerResult = 2L * Integer.BYTES * Math.max(1, numVertices);
+        int maxResults = (int) Math.max(1, Math.min(maxCacheBytes / bytesPerResult, Integer.MAX_VALUE));
+        this.cache = new LinkedHashMap<>(16, 0.75f, true){
+            /**
+             * Drops the least recently used result once there are too many.
+             *
+             * @param eldest the least recently used result
+             * @return true if there are more results than fit in the memory allowed
+             */
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SearchResult> eldest){
+                return size() > maxResults;
+            }
+        };
+    }
+
+    /**
+     * Gets the number of vertices in the graph.
+     *
+     * @return the number of vertices
+     */
+    @Override
+    public int getNumVertices(){
+        return numVertices;
+    }
+
+    /**
+     * Gets the length of the shortest path between 2 vertices, searching the graph from the first if needed.
+     *
+     * @param from the vertex at the start of the path
+     * @param to the vertex at the end of the path
+     * @return the sum of the weights of the edges along the path, or NO_PATH if there is none
+     */
+    @Override
+    public int getDistance(int from, int to){
+        return getSearchResult(from).dist[to];
+    }
+
+    /**
+     * Writes the vertices along the shortest path between 2 vertices into an array, searching the graph from the
+     * first if needed.
+     *
+     * @param from the vertex at the start of the path
+     * @param to the vertex at the end of the path
+     * @param path the array into which the vertices are written, in order, starting with from and ending with to.
+     *             It must be at least as long as the number of vertices in the graph.
+     * @return the number of vertices written, or 0 if there is no path
+     */
+    @Override
+    public int getPath(int from, int to, int[] path){
+        SearchResult result = getSearchResult(from);
+        if(result.dist[to] >= NO_PATH){
+            return 0;
+        }
+        // Walk back from the end of the path, then reverse it in place.
+        int length = 0;
+        for(int v = to; v != -1; v = result.prev[v]){
+            path[length++] = v;
+        }
+        for(int i = 0, j = length - 1; i < j; i++, j--){
+            int vertex = path[i];
+            path[i] = path[j];
+            path[j] = vertex;
+        }
+        return length;
+    }
+
+    /**
+     * Gets the number of queries answered from the results of an earlier search.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getCacheHits(){
+        return cacheHits;
+    }
+
+    /**
+     * Gets the number of queries for which the graph had to be searched.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getCacheMisses(){
+        return cacheMisses;
+    }
+
+    /**
+     * Gets the result of a search from a source vertex, searching the graph if it is not in the cache.
+     *
+     * @param source the vertex at the start of the paths
+     * @return the result of the search
+     */
+    private synchronized SearchResult getSearchResult(int source){
+        SearchResult result = cache.get(source);
+        if(result != null){
+            cacheHits++;
+            return result;
+        }
+        cacheMisses++;
+        result = search(source);
+        cache.put(source, result);
+        return result;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a source vertex.
+     *
+     * The queue is a binary heap of longs, each packing the distance to a vertex into its upper half and the vertex
+     * into its lower half, so that they order by distance. Rather than moving a vertex up the heap when a shorter
+     * path to it is found, it is added again, and the stale entry is skipped when it reaches the top.
+     *
+     * @param source the vertex at the start of the paths
+     * @return the shortest distance to, and previous vertex on the shortest path to, each vertex from the source
+     */
+    private SearchResult search(int source){
+        int[] dist = new int[numVertices];
+        int[] prev = new int[numVertices];
+        Arrays.fill(dist, NO_PATH);
+        Arrays.fill(prev, -1);
+        long[] heap = new long[Math.max(16, numVertices)];
+        int heapSize = 0;
+
+        dist[source] = 0;
+        heap[heapSize++] = source;
+        while(heapSize > 0){
+            long top = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+            int v = (int) top;
+            int d = (int) (top >>> 32);
+            if(d > dist[v]){
+                continue;
+            }
+            for(int e = edgeStarts[v]; e < edgeStarts[v+1]; e++){
+                int to = edgeTargets[e];
+                int through = d + edgeWeights[e];
+                if(through < dist[to]){
+                    dist[to] = through;
+                    prev[to] = v;
+                    if(heapSize == heap.length){
+                        heap = Arrays.copyOf(heap, 2 * heap.length);
+                    }
+                    heap[heapSize++] = ((long) through << 32) | to;
+                    siftUp(heap, heapSize - 1);
+                }
+            }
+        }
+        return new SearchResult(dist, prev);
+    }
+
+    /**
+     * Moves an entry of a binary heap up until its parent is no larger.
+     *
+     * @param heap the heap
+     * @param i the index of the entry
+     */
+    private static void siftUp(long[] heap, int i){
+        long entry = heap[i];
+        while(i > 0){
+            int parent = (i - 1) / 2;
+            if(heap[parent] <= entry){
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    /**
+     * Moves the top entry of a binary heap down until its children are no smaller.
+     *
+     * @param heap the heap
+     * @param size the number of entries in the heap
+     */
+    private static void siftDown(long[] heap, int size){
+        if(size == 0){
+            return;
+        }
+        long entry = heap[0];
+        int i = 0;
+        while(2 * i + 1 < size){
+            int child = 2 * i + 1;
+            if(child + 1 < size && heap[child + 1] < heap[child]){
+                child++;
+            }
+            if(entry <= heap[child]){
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+}
@@ -21,23 +21,21 @@ public class Drone {
     /** The what3words address of Appleton tower */
     public static final String AT_W3W_ADDR = "nests.takes.print";
     /** The total number of moves the drone can make when fully charged */
-    private final int STARTING_MOVES_TOTAL = 1500;
+    public static final int STARTING_MOVES_TOTAL = 1500;
 
-    /** The w3w address of the last location the drone visited */
-    private String w3wAddress;
-    /** The real position of the drone */
-    private LongLat position;
+    /** Where the drone is and how much battery it has left; replaced, never changed, as the drone moves */
+    private DroneState state;
     /** The graph of the real world locations between which the drone is moving */
     private LocationGraph lg;
     /** Words instance whose HashMaps have been populated with details of the what3words addresses the drone can visit */
     private Words words;
     /** The no-fly-zones the drone must not enter */
     private NoFlyZones zones;
-    /** The number of moves the drone has the battery power left to make */
-    private int numMoves;
-
+    /** The cache of the straight paths the drone has flown, through which every path it flies is found */
+    private PathCache paths;
     /**
-     * Constructor to instantiate a new Drone instance.
+     * Constructor to instantiate a new Drone instance, with a PathCache of its own holding up to
+     * PathCache.DEFAULT_MAX_ENTRIES least recently used paths.
      *
      * @param lg a LocationGraph instance whose graph contains all the real world locations the drone can visit and the
      *           paths that exist between them
@@ -46,13 +44,26 @@ public class Drone {
      * @param zones the no-fly-zones the drone must not enter
      */
     public Drone(LocationGraph lg, Words words, NoFlyZones zones){
+        this(lg, words, zones, new PathCache());
+    }
+
+    /**
+     * Constructor to instantiate a new Drone instance which flies its paths through a given PathCache.
+     *
+     * @param lg a LocationGraph instance whose graph contains all the real world locations the drone can visit and the
+     *           paths that exist between them
+     * @param words a Words instance whose HashMaps have been populated with the details of the w3w locations the drone can
+     *            visit
+     * @param zones the no-fly-zones the drone must not enter
+     * @param paths the cache through which the drone's paths are flown
+     */
+    public Drone(LocationGraph lg, Words words, NoFlyZones zones, PathCache paths){
         // Starts at Appleton Tower
-        this.w3wAddress = this.AT_W3W_ADDR;
-        this.position = LongLat.AT_LOC;
+        this.state = DroneState.atBase();
         this.lg = lg;
         this.words = words;
         this.zones = zones;
-        this.numMoves = STARTING_MOVES_TOTAL;
+        this.paths = paths;
     }
 
     /**
@@ -60,113 +71,187 @@ public class Drone {
      *
      * Takes the locations from which items are to be collected and the delivery location selected by the user,
      * finds the shortest path from the drone's current location to the delivery point, with stops at each shop,
-     * and moves the drone accordingly. The drone is 'moved' by updating its w3wAddress and position fields. If the
-     * drone doesn't have enough battery to complete the delivery and return to base, its position will not be updated
-     * and the delivery not made. Please see main class documentation for clarity on what constitutes a 'path' and a 'sub-path'
-     * in this method.
+     * and moves the drone accordingly. The drone is 'moved' by replacing its state with the one the delivery ends in.
+     * If the drone doesn't have enough battery to complete the delivery and return to base, its state will not be
+     * replaced and the delivery not made. Please see main class documentation for clarity on what constitutes a 'path'
+     * and a 'sub-path' in this method.
      *
      * @param pickUpLocs the w3w addresses of shops at which item in the order being delivered are kept
      * @param deliveryLoc the w3w address of the customer's selected delivery location
-     * @return an ArrayList of What3Words.LongLat objects; may be empty if the drone doesn't have enough
+     * @return a FlightPath of the points visited; may be empty if the drone doesn't have enough
      *         battery to complete the order and return to base
      */
-    public ArrayList<LongLat> makeDelivery(ArrayList<String> pickUpLocs, String deliveryLoc){
-        String originalAddr = this.w3wAddress;
-        LongLat originalPos = this.position;
-        ArrayList<LongLat> deliveryPathLocs = new ArrayList<>();
+    public FlightPath makeDelivery(ArrayList<String> pickUpLocs, String deliveryLoc){
+        DeliveryEvaluation evaluation = evaluate(this.state, pickUpLocs, deliveryLoc, true);
+        if(evaluation.feasible){
+            this.state = evaluation.endState;
+        }
+        return evaluation.pointsVisited;
+    }
 
+    /**
+     * Works out what making a delivery from a given state would do, without moving the drone or printing anything.
+     *
+     * The delivery is planned and flown exactly as makeDelivery would from the same state, so the two agree on
+     * whether it is feasible and on the points visited. Nothing is changed but the caches of paths, so any
+     * number of deliveries and states may be evaluated at once from different threads.
+     *
+     * @param state the state of the drone before the delivery
+     * @param pickUpLocs the w3w addresses of shops at which item in the order being delivered are kept
+     * @param deliveryLoc the w3w address of the customer's selected delivery location
+     * @return the outcome of the delivery
+     */
+    public DeliveryEvaluation evaluate(DroneState state, List<String> pickUpLocs, String deliveryLoc){
+        return evaluate(state, pickUpLocs, deliveryLoc, false);
+    }
+
+    /**
+     * Works out what making a delivery from a given state would do, without moving the drone.
+     *
+     * Whether the drone has enough battery is first decided from the weights of the graph, before any move is
+     * simulated; the cost of returning to base is the length of the shortest path back through the graph from the
+     * delivery location. A delivery rejected there is never flown. Only if the graph leaves room for the delivery are
+     * its points found, and the moves actually flown checked again, so the battery is never overdrawn.
+     *
+     * @param state the state of the drone before the delivery
+     * @param pickUpLocs the w3w addresses of shops at which item in the order being delivered are kept
+     * @param deliveryLoc the w3w address of the customer's selected delivery location
+     * @param verbose true if the addresses and points visited are to be printed as they are found
+     * @return the outcome of the delivery
+     */
+    private DeliveryEvaluation evaluate(DroneState state, List<String> pickUpLocs, String deliveryLoc, boolean verbose){
         // Shortest path for drone to follow from its w3wAddress to deliveryLoc
-        List<List<String>> w3wPath = lg.getW3wPathFromGraph(this.w3wAddress, pickUpLocs, deliveryLoc);
-        LongLat delivPoint = words.getLocOfAddr(deliveryLoc).coordinates;
+        List<List<String>> w3wPath = lg.getW3wPathFromGraph(state.w3wAddress, pickUpLocs, deliveryLoc);
+        int movesToBase = lg.getDistanceTo(deliveryLoc, AT_W3W_ADDR);
+        int graphDeliveryMoves = getGraphDeliveryMoves(w3wPath);
+        if(!(enoughBattery(state, movesToBase, graphDeliveryMoves))){
+            return new DeliveryEvaluation(false, movesToBase + graphDeliveryMoves, state, new FlightPath());
+        }
 
+        FlightPath deliveryPathLocs = new FlightPath();
+        DroneState endState = state;
         for(List<String> subPath : w3wPath){
-            ArrayList<LongLat> subPathPoints = getPoints(subPath);
-            deliveryPathLocs.addAll(subPathPoints);
+            endState = addPoints(endState, subPath, deliveryPathLocs, verbose);
         }
 
-        int movesToBase = delivPoint.getPathTo(LongLat.AT_LOC, this.zones).size()-1;
         int deliveryMoves = (deliveryPathLocs.size()-1) + (w3wPath.size()-1);
-        if(!(enoughBattery(movesToBase, deliveryMoves))){
-            this.w3wAddress = originalAddr;
-            this.position = originalPos;
-            return new ArrayList<>();
+        if(!(enoughBattery(state, movesToBase, deliveryMoves))){
+            return new DeliveryEvaluation(false, movesToBase + deliveryMoves, state, new FlightPath());
         }
+        return new DeliveryEvaluation(true, movesToBase + deliveryMoves, endState.withMovesUsed(movesToBase + deliveryMoves), deliveryPathLocs);
+    }
 
-        this.numMoves = this.numMoves - (movesToBase + deliveryMoves);
-        return deliveryPathLocs;
+    /**
+     * Finds the moves a delivery takes by the weights of the graph, without simulating any move.
+     *
+     * The weight of each hop between addresses counts the point at which it starts as well as its moves, just as
+     * the points of the FlightPath are counted by makeDelivery, which adds one move for each sub-path but the first,
+     * less one. This is the same cost DeliveryPlanner charges for the delivery.
+     *
+     * @param w3wPath the path of the delivery, as returned by LocationGraph.getW3wPathFromGraph
+     * @return the number of moves the delivery takes by the weights of the graph, at most ShortestPaths.NO_PATH
+     */
+    private int getGraphDeliveryMoves(List<List<String>> w3wPath){
+        return Math.min(ShortestPaths.NO_PATH, lg.getW3wPathWeight(w3wPath) + (w3wPath.size() - 2));
     }
 
     /**
      * Checks if the drone has enough battery to complete the delivery of an order and return to base after.
      *
+     * @param state the state of the drone before the delivery
      * @param movesToBase the number of moves required to return the drone to being 'close to' its base after
      *                    completing the delivery in question
      * @param deliveryMoves the number of moves required to complete the delivery
      * @return true if the drone has sufficient moves to complete the delivery and return to base, false otherwise
      */
-    private boolean enoughBattery(int movesToBase, int deliveryMoves){
-        if(movesToBase + deliveryMoves > this.numMoves){
+    private static boolean enoughBattery(DroneState state, int movesToBase, int deliveryMoves){
+        if(movesToBase + deliveryMoves > state.numMoves){
             return false;
         }
         return true;
     }
 
+    /**
+     * Gets the cache through which the drone's paths are flown, so that its use can be reported.
+     *
+     * @return the cache of paths
+     */
+    public PathCache getPathCache(){
+        return this.paths;
+    }
+
+    /**
+     * Gets where the drone is and how much battery it has left, from which deliveries can be evaluated.
+     *
+     * @return the state of the drone
+     */
+    public DroneState getState(){
+        return this.state;
+    }
+
     /**
      * Returns the drone to its base of operations from its current location.
      *
      * @return the points the drone must visit along the path back to its base
      */
-    public ArrayList<LongLat> returnToBase(){
-        List<String> pathToBase = lg.getShortestPath(this.w3wAddress, AT_W3W_ADDR);
-        ArrayList<LongLat> movesToBase = getPoints(pathToBase);
-        this.numMoves = this.numMoves - movesToBase.size();
-        this.w3wAddress = AT_W3W_ADDR;
-        System.out.println(String.format("Moves remaining at completion: %d", this.numMoves));
+    public FlightPath returnToBase(){
+        List<String> pathToBase = lg.getShortestPath(this.state.w3wAddress, AT_W3W_ADDR);
+        FlightPath movesToBase = new FlightPath();
+        DroneState atBase = addPoints(this.state, pathToBase, movesToBase, true).withMovesUsed(movesToBase.size());
+        this.state = new DroneState(AT_W3W_ADDR, atBase.position, atBase.numMoves);
+        System.out.println(String.format("Moves remaining at completion: %d", this.state.numMoves));
         return movesToBase;
     }
 
     /**
-     * Gets the points for the drone to visit in order to traverse a 'sub-path'.
+     * Adds the points for the drone to visit in order to traverse a 'sub-path' to the end of a FlightPath.
      *
      * Please refer to main class documentation for clarity on what constitutes a sub-path.
      *
+     * @param state the state of the drone at the start of the sub-path
      * @param subPath the 'sub-path' the drone is to follow, in the format of a List of w3w addresses
-     * @return an ArrayList of What3WordsLoc.LongLat instances, representing the points in space the drone
-     *         must visit, in order from start to end, to traverse the sub-path
+     * @param pointsToVisit the FlightPath to which the points in space the drone must visit are added, in order from
+     *                      start to end, to traverse the sub-path
+     * @param verbose true if the addresses and points visited are to be printed as they are found
+     * @return the state of the drone at the end of the sub-path, with the battery it had at the start
      */
-    private ArrayList<LongLat> getPoints(List<String> subPath){
-        ArrayList<LongLat> pointsToVisit = new ArrayList<>();
-        System.out.println(String.format("Start loc: %s", subPath.get(0)));
-        // The drone is already here.
-        subPath.remove(0);
-        for(String w3wAddr : subPath){
+    private DroneState addPoints(DroneState state, List<String> subPath, FlightPath pointsToVisit, boolean verbose){
+        if(verbose){
+            System.out.println(String.format("Start loc: %s", subPath.get(0)));
+        }
+        // The drone is already at the first address.
+        for(String w3wAddr : subPath.subList(1, subPath.size())){
             LongLat addrPoint= words.getLocOfAddr(w3wAddr).coordinates;
-            ArrayList<LongLat> pointsBetweenAddrs = moveBetweenPoints(this.position, addrPoint);
-            pointsToVisit.addAll(pointsBetweenAddrs);
-            System.out.println("Subpath locations:");
-            for(LongLat loc: pointsBetweenAddrs){
-                System.out.println(loc.toString());
+            int firstPoint = pointsToVisit.size();
+            state = moveBetweenPoints(state, w3wAddr, addrPoint, pointsToVisit);
+            if(verbose){
+                System.out.println("Subpath locations:");
+                for(int i = firstPoint; i < pointsToVisit.size(); i++){
+                    System.out.println(LongLat.toString(pointsToVisit.getLng(i), pointsToVisit.getLat(i)));
+                }
+                System.out.println(String.format("Drone now at: %s", state.w3wAddress));
             }
-            this.w3wAddress = w3wAddr;
-            System.out.println(String.format("Drone now at: %s", this.w3wAddress));
         }
-        System.out.println("Sub path traversed!");
-        return pointsToVisit;
+        if(verbose){
+            System.out.println("Sub path traversed!");
+        }
+        return state;
     }
 
     /**
-     * Moves the drone between two points in space, updating its position as it moves.
+     * Moves the drone from its position to a point in space, finding its position as it moves.
      *
-     * @param start the point at which the movement of the drone is to start
+     * @param state the state of the drone at the start of the move
+     * @param w3wAddr the w3w address of the point, which the drone is taken to have visited even if no path to it
+     *                is found
      * @param end the destination of the drone
-     * @return an ArrayList of What3WordsLoc.LongLat instances, each representing a point in space the
-     *         drone must visit as it moves from start to end
+     * @param pointsToVisit the FlightPath to which each point in space the drone must visit as it moves is added
+     * @return the state of the drone at the end of the move, with the battery it had at the start
      */
-    private ArrayList<LongLat> moveBetweenPoints(LongLat start, LongLat end){
-        ArrayList<LongLat> pointsToVisit = start.getPathTo(end, this.zones);
-        for(LongLat point: pointsToVisit){
-            this.position = point;
+    private DroneState moveBetweenPoints(DroneState state, String w3wAddr, LongLat end, FlightPath pointsToVisit){
+        if(paths.addPathTo(state.position, end, this.zones, pointsToVisit)){
+            return new DroneState(w3wAddr, pointsToVisit.get(pointsToVisit.size() - 1), state.numMoves);
         }
-        return pointsToVisit;
+        return new DroneState(w3wAddr, state.position, state.numMoves);
     }
-}
\ No newline at end of file
+}
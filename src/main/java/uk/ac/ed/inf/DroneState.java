@@ -0,0 +1,58 @@
+package uk.ac.ed.inf;
+
+/**
+ * An immutable snapshot of where the drone is and how much battery it has left.
+ *
+ * As no snapshot ever changes, the same one can be handed to Drone.evaluate from many threads at once, and a Drone
+ * moves only by replacing its snapshot with a new one.
+ */
+public final class DroneState {
+    /** The w3w address of the last location the drone visited */
+    public final String w3wAddress;
+    /** The real position of the drone */
+    public final LongLat position;
+    /** The number of moves the drone has the battery power left to make */
+    public final int numMoves;
+
+    /**
+     * Constructor to instantiate a new DroneState instance.
+     *
+     * @param w3wAddress the w3w address of the last location the drone visited
+     * @param position the real position of the drone
+     * @param numMoves the number of moves the drone has the battery power left to make
+     */
+    public DroneState(String w3wAddress, LongLat position, int numMoves){
+        this.w3wAddress = w3wAddress;
+        this.position = position;
+        this.numMoves = numMoves;
+    }
+
+    /**
+     * Gets the state of a fully charged drone at Appleton Tower.
+     *
+     * @return the state of the drone before it makes any move
+     */
+    public static DroneState atBase(){
+        return new DroneState(Drone.AT_W3W_ADDR, LongLat.AT_LOC, Drone.STARTING_MOVES_TOTAL);
+    }
+
+    /**
+     * Gets the state of the drone after it has used some of its battery, at the same place.
+     *
+     * @param moves the number of moves' worth of battery used
+     * @return the state with moves fewer moves left
+     */
+    public DroneState withMovesUsed(int moves){
+        return new DroneState(w3wAddress, position, numMoves - moves);
+    }
+
+    /**
+     * An override of toString for the DroneState class
+     *
+     * @return a String representation of the address, position and battery of the DroneState instance calling it
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %s, %d moves left", w3wAddress, LongLat.toString(position.lng, position.lat), numMoves);
+    }
+}
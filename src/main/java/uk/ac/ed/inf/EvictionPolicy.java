@@ -0,0 +1,11 @@
+package uk.ac.ed.inf;
+
+/**
+ * The orders in which a PathCache drops its entries once it is full.
+ */
+public enum EvictionPolicy {
+    /** Drop the entry least recently looked up or added */
+    LRU,
+    /** Drop the entry added longest ago, however recently it was looked up */
+    FIFO
+}
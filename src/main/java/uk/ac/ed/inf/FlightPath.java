@@ -0,0 +1,151 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * A growable sequence of points visited by the drone, such as a sub-path, the points visited to make a delivery, or
+ * the whole day's flight.
+ *
+ * The longitude and latitude of each point are stored in parallel arrays of doubles, rather than as a list of LongLat
+ * objects, so that simulating and recording the drone's moves does not create an object for every point.
+ */
+public class FlightPath {
+    /** The number of points space is made for when none is given */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** The longitude of each point, in order; only the first size entries are used */
+    private double[] lngs;
+    /** The latitude of each point, in order; only the first size entries are used */
+    private double[] lats;
+    /** The number of points in the path */
+    private int size = 0;
+
+    /**
+     * Constructor to instantiate a new, empty FlightPath instance.
+     */
+    public FlightPath(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to instantiate a new, empty FlightPath instance with space for a given number of points.
+     *
+     * @param capacity the number of points the path can hold before it needs to grow
+     */
+    public FlightPath(int capacity){
+        this.lngs = new double[Math.max(capacity, 1)];
+        this.lats = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a point to the end of the path.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     */
+    public void add(double lng, double lat){
+        if(size == lngs.length){
+            grow(size + 1);
+        }
+        lngs[size] = lng;
+        lats[size] = lat;
+        size++;
+    }
+
+    /**
+     * Adds every point of another path to the end of this one.
+     *
+     * @param path the path whose points are to be added
+     */
+    public void addAll(FlightPath path){
+        if(size + path.size > lngs.length){
+            grow(size + path.size);
+        }
+        System.arraycopy(path.lngs, 0, lngs, size, path.size);
+        System.arraycopy(path.lats, 0, lats, size, path.size);
+        size += path.size;
+    }
+
+    /**
+     * Removes every point after the first few from the path.
+     *
+     * @param newSize the number of points to be kept
+     */
+    public void truncate(int newSize){
+        size = Math.min(size, newSize);
+    }
+
+    /**
+     * Gets the number of points in the path.
+     *
+     * @return the number of points
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Checks if the path has no points.
+     *
+     * @return true if the path has no points, false otherwise
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Gets the longitude of a point of the path.
+     *
+     * @param i the index of the point
+     * @return the longitude of the point
+     */
+    public double getLng(int i){
+        checkIndex(i);
+        return lngs[i];
+    }
+
+    /**
+     * Gets the latitude of a point of the path.
+     *
+     * @param i the index of the point
+     * @return the latitude of the point
+     */
+    public double getLat(int i){
+        checkIndex(i);
+        return lats[i];
+    }
+
+    /**
+     * Gets a point of the path as a new LongLat instance.
+     *
+     * @param i the index of the point
+     * @return the point
+     */
+    public LongLat get(int i){
+        checkIndex(i);
+        return new LongLat(lngs[i], lats[i]);
+    }
+
+    /**
+     * Grows the arrays of the path to hold at least a given number of points, at least doubling them.
+     *
+     * @param minCapacity the number of points the path must be able to hold
+     */
+    private void grow(int minCapacity){
+        int capacity = Math.max(minCapacity, 2 * lngs.length);
+        lngs = Arrays.copyOf(lngs, capacity);
+        lats = Arrays.copyOf(lats, capacity);
+    }
+
+    /**
+     * Checks that an index refers to a point of the path, exiting the application if not.
+     *
+     * @param i the index to be checked
+     */
+    private void checkIndex(int i){
+        if(i < 0 || i >= size){
+            System.err.println(String.format("Fatal error in FlightPath: index %d is out of bounds for %d points.", i, size));
+            System.exit(1);
+        }
+    }
+}
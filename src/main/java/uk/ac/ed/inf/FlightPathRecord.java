@@ -0,0 +1,39 @@
+package uk.ac.ed.inf;
+
+/**
+ * Represents a single move of the drone, as a record of the flightpath table.
+ */
+public class FlightPathRecord {
+    /** The ID of the order being delivered when the move was made */
+    public final String orderNo;
+    /** The longitude of the point at which the move started */
+    public final double fromLongitude;
+    /** The latitude of the point at which the move started */
+    public final double fromLatitude;
+    /** The bearing of the move, or LongLat.JUNK_ANGLE if the drone hovered */
+    public final int angle;
+    /** The longitude of the point at which the move ended */
+    public final double toLongitude;
+    /** The latitude of the point at which the move ended */
+    public final double toLatitude;
+
+    /**
+     * Constructor to instantiate a new FlightPathRecord instance.
+     *
+     * @param orderNo the ID of the order being delivered when the move was made
+     * @param fromLongitude the longitude of the point at which the move started
+     * @param fromLatitude the latitude of the point at which the move started
+     * @param angle the bearing of the move, or LongLat.JUNK_ANGLE if the drone hovered
+     * @param toLongitude the longitude of the point at which the move ended
+     * @param toLatitude the latitude of the point at which the move ended
+     */
+    public FlightPathRecord(String orderNo, double fromLongitude, double fromLatitude, int angle,
+                            double toLongitude, double toLatitude){
+        this.orderNo = orderNo;
+        this.fromLongitude = fromLongitude;
+        this.fromLatitude = fromLatitude;
+        this.angle = angle;
+        this.toLongitude = toLongitude;
+        this.toLatitude = toLatitude;
+    }
+}
@@ -0,0 +1,14 @@
+package uk.ac.ed.inf;
+
+/**
+ * The ways in which the drone's flight path can be stored in the database.
+ */
+public enum FlightPathSchema {
+    /** One record per move, with the points at either end and its angle, in the flightpath table */
+    ROWS,
+    /**
+     * One record per delivery, with the point it starts at and the angles of its moves packed into bytes, in the
+     * flightpathcompact table
+     */
+    COMPACT
+}
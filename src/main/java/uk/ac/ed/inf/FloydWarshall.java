@@ -0,0 +1,349 @@
+package uk.ac.ed.inf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs shortest paths through a directed graph with integer weights, found with the Floyd Warshall algorithm.
+ *
+ * The vertices of the graph are dense integer IDs. The distance between each pair of vertices is stored in a flat
+ * int matrix, alongside a matrix of the next vertex to visit on the shortest path between them, from which paths
+ * are rebuilt into a caller's array without allocating.
+ *
+ * The matrices are processed in square blocks of BLOCK_SIZE vertices, so that the rows being read and written
+ * stay in the processor's cache. In each round, the block on the diagonal is relaxed first, then the blocks
+ * sharing its row or column, then every other block; the blocks within the last 2 steps are independent of one
+ * another and are shared out between threads.
+ */
+public class FloydWarshall implements ShortestPaths {
+    /** The number of vertices along each side of a block of the matrices */
+    private static final int BLOCK_SIZE = 64;
+
+    /** The number of vertices in the graph */
+    private final int numVertices;
+    /** The shortest distance from each vertex to each other, row after row */
+    private final int[] dist;
+    /** The next vertex on the shortest path from each vertex to each other, row after row */
+    private final int[] next;
+    /** The number of threads the blocks of a step are shared out between */
+    private final int parallelism;
+
+    /**
+     * Constructor to find the shortest paths between every pair of vertices of a graph.
+     *
+     * The edges of the graph are given in compressed sparse row form; the edges from vertex v are those with
+     * indices from edgeStarts[v] up to, but not including, edgeStarts[v+1].
+     *
+     * @param numVertices the number of vertices in the graph
+     * @param edgeStarts the index of the first edge from each vertex, with one extra entry marking the end
+     * @param edgeTargets the vertex at the end of each edge
+     * @param edgeWeights the weight of each edge, which must not be negative
+     * @param parallelism the number of threads to be used
+     */
+    public FloydWarshall(int numVertices, int[] edgeStarts, int[] edgeTargets, int[] edgeWeights, int parallelism){
+        this.numVertices = numVertices;
+        this.parallelism = parallelism;
+        this.dist = new int[numVertices * numVertices];
+        this.next = new int[numVertices * numVertices];
+        Arrays.fill(dist, NO_PATH);
+        Arrays.fill(next, -1);
+        for(int v = 0; v < numVertices; v++){
+            dist[v * numVertices + v] = 0;
+            next[v * numVertices + v] = v;
+            for(int e = edgeStarts[v]; e < edgeStarts[v+1]; e++){
+                int cell = v * numVertices + edgeTargets[e];
+                if(edgeWeights[e] < dist[cell]){
+                    dist[cell] = edgeWeights[e];
+                    next[cell] = edgeTargets[e];
+                }
+            }
+        }
+        findShortestPaths();
+    }
+
+    /**
+     * Constructor to restore shortest paths which have already been found.
+     *
+     * @param numVertices the number of vertices in the graph
+     * @param dist the shortest distance from each vertex to each other, row after row
+     * @param next the next vertex on the shortest path from each vertex to each other, row after row
+     */
+    private FloydWarshall(int numVertices, int[] dist, int[] next){
+        this.numVertices = numVertices;
+        this.parallelism = 1;
+        this.dist = dist;
+        this.next = next;
+    }
+
+    /**
+     * Reads shortest paths written by writeTo from a buffer, advancing its position past them.
+     *
+     * @param buffer the buffer to be read from
+     * @param numVertices the number of vertices in the graph
+     * @return the shortest paths read
+     */
+    public static FloydWarshall readFrom(ByteBuffer buffer, int numVertices){
+        int[] dist = new int[numVertices * numVertices];
+        int[] next = new int[numVertices * numVertices];
+        buffer.asIntBuffer().get(dist).get(next);
+        buffer.position(buffer.position() + Integer.BYTES * (dist.length + next.length));
+        return new FloydWarshall(numVertices, dist, next);
+    }
+
+    /**
+     * Writes the distance and next vertex matrices to a buffer, advancing its position past them.
+     *
+     * @param buffer the buffer to be written to, which must have getSizeInBytes bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer){
+        buffer.asIntBuffer().put(dist).put(next);
+        buffer.position(buffer.position() + Integer.BYTES * (dist.length + next.length));
+    }
+
+    /**
+     * Gets the number of bytes written by writeTo.
+     *
+     * @return the size of the distance and next vertex matrices in bytes
+     */
+    public long getSizeInBytes(){
+        return (long) Integer.BYTES * (dist.length + next.length);
+    }
+
+    /**
+     * Gets the number of vertices in the graph.
+     *
+     * @return the number of vertices
+     */
+    @Override
+    public int getNumVertices(){
+        return numVertices;
+    }
+
+    /**
+     * Gets the length of the shortest path between 2 vertices.
+     *
+     * @param from the vertex at the start of the path
+     * @param to the vertex at the end of the path
+     * @return the sum of the weights of the edges along the path, or NO_PATH if there is none
+     */
+    @Override
+    public int getDistance(int from, int to){
+        return dist[from * numVertices + to];
+    }
+
+    /**
+     * Writes the vertices along the shortest path between 2 vertices into an array.
+     *
+     * @param from the vertex at the start of the path
+     * @param to the vertex at the end of the path
+     * @param path the array into which the vertices are written, in order, starting with from and ending with to.
+     *             It must be at least as long as the number of vertices in the graph.
+     * @return the number of vertices written, or 0 if there is no path
+     */
+    @Override
+    public int getPath(int from, int to, int[] path){
+        if(dist[from * numVertices + to] >= NO_PATH){
+            return 0;
+        }
+        int length = 0;
+        int v = from;
+        path[length++] = v;
+        while(v != to){
+            v = next[v * numVertices + to];
+            path[length++] = v;
+        }
+        return length;
+    }
+
+    /**
+     * Finds the shortest paths through a graph made by adding vertices to the graph of this instance, without running
+     * the whole algorithm again. This instance is left unchanged.
+     *
+     * The new vertices are inserted one at a time. The shortest paths from a new vertex are found through its edges
+     * to the vertices already inserted, and those to it through their edges to it, after which the paths between every
+     * pair of vertices already inserted are relaxed through it. Each insertion takes time square in the number of
+     * vertices, rather than cubic.
+     *
+     * The edges of the larger graph are given in compressed sparse row form, as in the constructor. The vertices of
+     * this instance keep their IDs, and the edges between them must be unchanged.
+     *
+     * @param numVertices the number of vertices in the larger graph; the new vertices have the highest IDs
+     * @param edgeStarts the index of the first edge from each vertex, with one extra entry marking the end
+     * @param edgeTargets the vertex at the end of each edge
+     * @param edgeWeights the weight of each edge, which must not be negative
+     * @return the shortest paths between every pair of vertices of the larger graph
+     */
+    public FloydWarshall extend(int numVertices, int[] edgeStarts, int[] edgeTargets, int[] edgeWeights){
+        int[] newDist = new int[numVertices * numVertices];
+        int[] newNext = new int[numVertices * numVertices];
+        Arrays.fill(newDist, NO_PATH);
+        Arrays.fill(newNext, -1);
+        for(int i = 0; i < this.numVertices; i++){
+            System.arraycopy(dist, i * this.numVertices, newDist, i * numVertices, this.numVertices);
+            System.arraycopy(next, i * this.numVertices, newNext, i * numVertices, this.numVertices);
+        }
+
+        // The edges into each new vertex, grouped by the vertex they end at.
+        int numNew = numVertices - this.numVertices;
+        int[] inStarts = new int[numNew + 1];
+        for(int e = 0; e < edgeTargets.length; e++){
+            if(edgeTargets[e] >= this.numVertices){
+                inStarts[edgeTargets[e] - this.numVertices + 1]++;
+            }
+        }
+        for(int x = 0; x < numNew; x++){
+            inStarts[x+1] += inStarts[x];
+        }
+        int[] inSources = new int[inStarts[numNew]];
+        int[] inWeights = new int[inStarts[numNew]];
+        int[] filled = Arrays.copyOf(inStarts, numNew);
+        for(int u = 0; u < numVertices; u++){
+            for(int e = edgeStarts[u]; e < edgeStarts[u+1]; e++){
+                if(edgeTargets[e] >= this.numVertices){
+                    int slot = filled[edgeTargets[e] - this.numVertices]++;
+                    inSources[slot] = u;
+                    inWeights[slot] = edgeWeights[e];
+                }
+            }
+        }
+
+        for(int x = this.numVertices; x < numVertices; x++){
+            int xRow = x * numVertices;
+            newDist[xRow + x] = 0;
+            newNext[xRow + x] = x;
+            // Paths from x leave along one of its edges to a vertex already inserted.
+            for(int e = edgeStarts[x]; e < edgeStarts[x+1]; e++){
+                int u = edgeTargets[e];
+                if(u >= x){
+                    continue;
+                }
+                int uRow = u * numVertices;
+                for(int j = 0; j < x; j++){
+                    int through = edgeWeights[e] + newDist[uRow + j];
+                    if(through < newDist[xRow + j]){
+                        newDist[xRow + j] = through;
+                        newNext[xRow + j] = u;
+                    }
+                }
+            }
+            // Paths to x arrive along one of its edges from a vertex already inserted.
+            for(int in = inStarts[x - this.numVertices]; in < inStarts[x - this.numVertices + 1]; in++){
+                int u = inSources[in];
+                if(u >= x){
+                    continue;
+                }
+                for(int i = 0; i < x; i++){
+                    int iRow = i * numVertices;
+                    int through = newDist[iRow + u] + inWeights[in];
+                    if(through < newDist[iRow + x]){
+                        newDist[iRow + x] = through;
+                        newNext[iRow + x] = (i == u) ? x : newNext[iRow + u];
+                    }
+                }
+            }
+            // Paths between vertices already inserted may now be shorter through x.
+            for(int i = 0; i < x; i++){
+                int iRow = i * numVertices;
+                int ix = newDist[iRow + x];
+                if(ix >= NO_PATH){
+                    continue;
+                }
+                int nextIx = newNext[iRow + x];
+                for(int j = 0; j < x; j++){
+                    int through = ix + newDist[xRow + j];
+                    if(through < newDist[iRow + j]){
+                        newDist[iRow + j] = through;
+                        newNext[iRow + j] = nextIx;
+                    }
+                }
+            }
+        }
+        return new FloydWarshall(numVertices, newDist, newNext);
+    }
+
+    /** Runs the blocked Floyd Warshall algorithm over the distance and next vertex matrices. */
+    private void findShortestPaths(){
+        int numBlocks = (numVertices + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if(numBlocks <= 1 || parallelism == 1){
+            for(int kb = 0; kb < numBlocks; kb++){
+                relaxBlock(kb, kb, kb);
+                for(int b = 0; b < numBlocks; b++){
+                    if(b != kb){
+                        relaxBlock(kb, b, kb);
+                        relaxBlock(b, kb, kb);
+                    }
+                }
+                for(int ib = 0; ib < numBlocks; ib++){
+                    for(int jb = 0; jb < numBlocks; jb++){
+                        if(ib != kb && jb != kb){
+                            relaxBlock(ib, jb, kb);
+                        }
+                    }
+                }
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for(int kb = 0; kb < numBlocks; kb++){
+                int k = kb;
+                relaxBlock(k, k, k);
+                // The blocks in the same row and column as the diagonal block, then all the others.
+                pool.submit(() -> IntStream.range(0, 2 * numBlocks).parallel()
+                        .filter(b -> b % numBlocks != k)
+                        .forEach(b -> {
+                            if(b < numBlocks){
+                                relaxBlock(k, b, k);
+                            }else{
+                                relaxBlock(b - numBlocks, k, k);
+                            }
+                        })).get();
+                pool.submit(() -> IntStream.range(0, numBlocks * numBlocks).parallel()
+                        .filter(b -> b / numBlocks != k && b % numBlocks != k)
+                        .forEach(b -> relaxBlock(b / numBlocks, b % numBlocks, k))).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Fatal error in FloydWarshall.findShortestPaths: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Relaxes the paths between the vertices of one block of the matrices through each intermediate vertex of
+     * another block.
+     *
+     * @param ib the block of vertices at the start of the paths
+     * @param jb the block of vertices at the end of the paths
+     * @param kb the block of intermediate vertices
+     */
+    private void relaxBlock(int ib, int jb, int kb){
+        int iEnd = Math.min((ib + 1) * BLOCK_SIZE, numVertices);
+        int jStart = jb * BLOCK_SIZE;
+        int jEnd = Math.min(jStart + BLOCK_SIZE, numVertices);
+        int kEnd = Math.min((kb + 1) * BLOCK_SIZE, numVertices);
+        for(int k = kb * BLOCK_SIZE; k < kEnd; k++){
+            int kRow = k * numVertices;
+            for(int i = ib * BLOCK_SIZE; i < iEnd; i++){
+                int iRow = i * numVertices;
+                int ik = dist[iRow + k];
+                if(ik >= NO_PATH){
+                    continue;
+                }
+                int nextIk = next[iRow + k];
+                for(int j = jStart; j < jEnd; j++){
+                    int through = ik + dist[kRow + j];
+                    if(through < dist[iRow + j]){
+                        dist[iRow + j] = through;
+                        next[iRow + j] = nextIk;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The methods in this class write GeoJSON directly from the classes of this application, without first building
+ * the objects of Mapbox's GeoJSON library.
+ *
+ * The output is the same, character for character, as that of the equivalent Mapbox objects' toJson methods.
+ */
+public class GeoJsonWriting {
+
+    /** Default constructor to prevent instantiation */
+    private GeoJsonWriting(){}
+
+    /**
+     * Writes a FeatureCollection holding a single Feature, whose Geometry is a LineString through every point of a
+     * flight path and whose properties are empty.
+     *
+     * @param path the flight path
+     * @param writer the writer to which the GeoJSON is written
+     * @throws IOException if the writer fails
+     */
+    public static void writeFlightPath(FlightPath path, Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("type").value("FeatureCollection");
+        json.name("features").beginArray();
+        json.beginObject();
+        json.name("type").value("Feature");
+        json.name("geometry").beginObject();
+        json.name("type").value("LineString");
+        json.name("coordinates").beginArray();
+        for(int i = 0; i < path.size(); i++){
+            // Mapbox rounds every coordinate it writes to 7 decimal places.
+            json.beginArray();
+            json.value(GeoJsonUtils.trim(path.getLng(i)));
+            json.value(GeoJsonUtils.trim(path.getLat(i)));
+            json.endArray();
+        }
+        json.endArray();
+        json.endObject();
+        json.name("properties").beginObject().endObject();
+        json.endObject();
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+}
@@ -0,0 +1,234 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The edges of a LocationGraph, and optionally the shortest paths between every pair of its vertices, stored in a
+ * binary file so that they need not be found again on the next run.
+ *
+ * Finding the edges takes a simulated flight between every pair of addresses, and the shortest paths take time cubic
+ * in the number of addresses, yet the shops, landmarks and no-fly-zones they depend on rarely change from one day to
+ * the next. Each file is therefore stamped with a key; a SHA-256 hash of every address and its coordinates, in vertex
+ * order, and of the compiled no-fly-zones. A file whose key does not match the current inputs is ignored.
+ *
+ * The file is laid out as follows, all in little-endian order:
+ *      1. the magic number and format version, as ints;
+ *      2. the key, as KEY_BYTES bytes;
+ *      3. the number of vertices, then each address as an int length followed by its UTF-8 bytes;
+ *      4. the number of edges, then the edge starts, edge targets and edge weights as int arrays;
+ *      5. a byte set to 1 if the shortest paths follow, as written by FloydWarshall.writeTo, or 0 if they do not.
+ *
+ * Files are memory mapped when read, so that the arrays are copied straight from the page cache.
+ */
+public class GraphCache {
+    /** The name of the file used by App to cache its LocationGraph */
+    public static final String DEFAULT_FILE_NAME = "location-graph.cache";
+    /** The first 4 bytes of every cache file; "DRGC" */
+    private static final int MAGIC = 0x44524743;
+    /** The version of the file layout and of the way edges are weighted; bumped whenever either changes */
+    private static final int VERSION = 1;
+    /** The number of bytes in a key */
+    private static final int KEY_BYTES = 32;
+
+    /** The w3w address of each vertex, indexed by vertex ID */
+    public final String[] addresses;
+    /** The index of the first edge from each vertex, with one extra entry marking the end */
+    public final int[] edgeStarts;
+    /** The vertex at the end of each edge */
+    public final int[] edgeTargets;
+    /** The weight of each edge */
+    public final int[] edgeWeights;
+    /** The shortest paths between every pair of vertices, or null if they were not stored */
+    public final FloydWarshall shortestPaths;
+
+    /**
+     * Constructor to hold the contents of a cache file.
+     *
+     * @param addresses the w3w address of each vertex, indexed by vertex ID
+     * @param edgeStarts the index of the first edge from each vertex, with one extra entry marking the end
+     * @param edgeTargets the vertex at the end of each edge
+     * @param edgeWeights the weight of each edge
+     * @param shortestPaths the shortest paths between every pair of vertices, or null if there are none
+     */
+    public GraphCache(String[] addresses, int[] edgeStarts, int[] edgeTargets, int[] edgeWeights, FloydWarshall shortestPaths){
+        this.addresses = addresses;
+        this.edgeStarts = edgeStarts;
+        this.edgeTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        this.shortestPaths = shortestPaths;
+    }
+
+    /**
+     * Finds the key identifying the inputs a LocationGraph is built from.
+     *
+     * @param addresses the w3w address of each vertex, indexed by vertex ID
+     * @param words a Words instance storing the details of every address
+     * @param zones a NoFlyZones instance storing the compiled no-fly-zones
+     * @return the key, of KEY_BYTES bytes
+     */
+    public static byte[] findKey(String[] addresses, Words words, NoFlyZones zones){
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("Fatal error in GraphCache.findKey: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+        ByteBuffer coordinates = ByteBuffer.allocate(Integer.BYTES + 2 * Double.BYTES);
+        for(String address : addresses){
+            LongLat point = words.getLocOfAddr(address).coordinates;
+            byte[] addressBytes = address.getBytes(StandardCharsets.UTF_8);
+            coordinates.clear();
+            coordinates.putInt(addressBytes.length).putDouble(point.lng).putDouble(point.lat);
+            digest.update(coordinates.array());
+            digest.update(addressBytes);
+        }
+        zones.updateDigest(digest);
+        return digest.digest();
+    }
+
+    /**
+     * Reads a cache file, if it exists and was written for the given key.
+     *
+     * @param file the path of the file
+     * @param key the key of the current inputs, as found by findKey
+     * @return the contents of the file, or null if it does not exist, is unreadable or is stale
+     */
+    public static GraphCache load(Path file, byte[] key){
+        if(!Files.isRegularFile(file)){
+            System.out.println(String.format("NO LOCATION GRAPH CACHE FOUND AT %s\n", file));
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] fileKey = new byte[KEY_BYTES];
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !Arrays.equals(readKey(buffer, fileKey), key)){
+                System.out.println(String.format("LOCATION GRAPH CACHE AT %s IS STALE\n", file));
+                return null;
+            }
+
+            String[] addresses = new String[buffer.getInt()];
+            for(int v = 0; v < addresses.length; v++){
+                byte[] addressBytes = new byte[buffer.getInt()];
+                buffer.get(addressBytes);
+                addresses[v] = new String(addressBytes, StandardCharsets.UTF_8);
+            }
+            int numEdges = buffer.getInt();
+            int[] edgeStarts = readInts(buffer, addresses.length + 1);
+            int[] edgeTargets = readInts(buffer, numEdges);
+            int[] edgeWeights = readInts(buffer, numEdges);
+            FloydWarshall shortestPaths = (buffer.get() == 1) ? FloydWarshall.readFrom(buffer, addresses.length) : null;
+
+            System.out.println(String.format("READ LOCATION GRAPH OF %d VERTICES FROM CACHE %s\n", addresses.length, file));
+            return new GraphCache(addresses, edgeStarts, edgeTargets, edgeWeights, shortestPaths);
+        } catch (IOException | RuntimeException e) {
+            // Truncated or corrupt files surface as runtime exceptions from the buffer or array sizes read from it.
+            System.out.println(String.format("LOCATION GRAPH CACHE AT %s IS UNREADABLE: %s\n", file, e));
+            return null;
+        }
+    }
+
+    /**
+     * Writes the contents of this instance to a cache file, replacing any file already there.
+     *
+     * The file is written in full under a temporary name, then moved into place, so that a reader never sees part of
+     * a file. Failing to write the file is not fatal, as the cache only saves time.
+     *
+     * @param file the path of the file
+     * @param key the key of the inputs the contents were found from, as found by findKey
+     */
+    public void save(Path file, byte[] key){
+        byte[][] addressBytes = new byte[addresses.length][];
+        long size = 4L * Integer.BYTES + KEY_BYTES + 1;
+        for(int v = 0; v < addresses.length; v++){
+            addressBytes[v] = addresses[v].getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + addressBytes[v].length;
+        }
+        size += (long) Integer.BYTES * (edgeStarts.length + edgeTargets.length + edgeWeights.length);
+        if(shortestPaths != null){
+            size += shortestPaths.getSizeInBytes();
+        }
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).put(key);
+            buffer.putInt(addresses.length);
+            for(byte[] bytes : addressBytes){
+                buffer.putInt(bytes.length).put(bytes);
+            }
+            buffer.putInt(edgeTargets.length);
+            writeInts(buffer, edgeStarts);
+            writeInts(buffer, edgeTargets);
+            writeInts(buffer, edgeWeights);
+            buffer.put((byte) ((shortestPaths != null) ? 1 : 0));
+            if(shortestPaths != null){
+                shortestPaths.writeTo(buffer);
+            }
+            buffer.force();
+        } catch (IOException e) {
+            System.out.println(String.format("COULD NOT WRITE LOCATION GRAPH CACHE TO %s: %s\n", file, e));
+            return;
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println(String.format("COULD NOT WRITE LOCATION GRAPH CACHE TO %s: %s\n", file, e));
+            return;
+        }
+        System.out.println(String.format("WROTE LOCATION GRAPH OF %d VERTICES TO CACHE %s\n", addresses.length, file));
+    }
+
+    /**
+     * Reads a key from a buffer, advancing its position past it.
+     *
+     * @param buffer the buffer to be read from
+     * @param key the array into which the key is read
+     * @return the key read
+     */
+    private static byte[] readKey(ByteBuffer buffer, byte[] key){
+        buffer.get(key);
+        return key;
+    }
+
+    /**
+     * Reads an array of ints from a buffer, advancing its position past them.
+     *
+     * @param buffer the buffer to be read from
+     * @param length the number of ints to be read
+     * @return the ints read
+     */
+    private static int[] readInts(ByteBuffer buffer, int length){
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + Integer.BYTES * length);
+        return values;
+    }
+
+    /**
+     * Writes an array of ints to a buffer, advancing its position past them.
+     *
+     * @param buffer the buffer to be written to
+     * @param values the ints to be written
+     */
+    private static void writeInts(ByteBuffer buffer, int[] values){
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + Integer.BYTES * values.length);
+    }
+}
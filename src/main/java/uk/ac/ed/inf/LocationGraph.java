@@ -1,14 +1,14 @@
 package uk.ac.ed.inf;
 
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
-import org.jgrapht.graph.*;
-
+import java.nio.file.Path;
 import java.util.*;
-
-import static org.jgrapht.GraphTests.isEmpty;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
- * Represents the locations the drone can visit as a graph, using the JGraphT library.
+ * Represents the locations the drone can visit as a graph.
  *
  * The vertices of the graph are locations stored on the web server in the 'words' directory i.e.,
  * landmarks, shops, delivery locations etc. An edge exists between 2 vertices if there exists a
@@ -26,67 +26,245 @@ import static org.jgrapht.GraphTests.isEmpty;
  *         if no direct route between the 2 locations in question exists.
  *
  * Please refer back to these definitions when required upon examining the documentation of this class.
+ *
+ * Internally, each address is given a dense integer ID (its vertex) when the graph is built, and the edges are held
+ * in compressed sparse row arrays indexed by these IDs. Addresses are only translated to and from IDs at the public
+ * methods of the class.
+ *
+ * The vertices are split into core vertices, which stay the same from day to day (shops, landmarks and the drone's
+ * base), and the addresses attached for a single day (delivery locations). The edges and shortest paths between core
+ * vertices are found once and kept; attaching a day's addresses only finds the edges to and from them, and extends
+ * the shortest paths from those between the core vertices.
  */
 public class LocationGraph {
-    /** The actual graph */
-    private final SimpleDirectedWeightedGraph<String, DefaultWeightedEdge> g = new SimpleDirectedWeightedGraph<String, DefaultWeightedEdge>(DefaultWeightedEdge.class);
+    /** The default number of threads used to find the edges of the graph; one per available processor */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
     /** Words instance whose HashMaps contain details of all words stored on the web server and the edges between then */
     private final Words words;
     /** NoFlyZones instance containing the details of all no-fly-zones stored on the web server */
     private final NoFlyZones zones;
-    /** FloydWarshallShortestPaths instance to allow the shortest path through the graph to be calculated using the Floyd Warshall algorithm */
-    private final FloydWarshallShortestPaths floydWarshall;
+    /** The shortest paths between the vertices of the graph, found as set by the ShortestPathMode given */
+    private ShortestPaths shortestPaths;
+    /** The number of threads used to find the edges of the graph and the shortest paths through it */
+    private final int parallelism;
+    /** How the shortest paths through the graph are found */
+    private final ShortestPathMode mode;
+    /** In ON_DEMAND mode, the most memory the paths found may take in bytes */
+    private final long maxCacheBytes;
+    /** The w3w address of each vertex, indexed by vertex ID; the core vertices come first */
+    private String[] addresses;
+    /** The vertex ID of each w3w address */
+    private final HashMap<String, Integer> vertexIds = new HashMap<>();
     /**
-     * A HashMap which maps the approximate number between w3w addresses to a combined key consisting of the
-     * concatenation of the addresses in question. An edge exists between two addresses where there is
-     * a straight, legal line between the two. The combined key is formed by concatenating the address
-     * at the end of the address to the address at the start, with a "." in between.
+     * The index in edgeTargets and edgeWeights of the first edge from each vertex, with one extra entry marking the end
+     * of the edges of the last vertex. An edge exists between two addresses where there is a straight, legal line
+     * between the two.
      */
-    private HashMap<String, Integer> weightMap = new HashMap<String, Integer>();
+    private int[] edgeStarts;
+    /** The vertex at the end of each edge, with the edges from each vertex in increasing order of this */
+    private int[] edgeTargets;
+    /** The approximate number of moves along each edge; the number of points along the straight path it represents */
+    private int[] edgeWeights;
+    /** The number of core vertices, which are kept when addresses are attached */
+    private final int numCoreVertices;
+    /** The index of the first edge between core vertices from each core vertex, with one extra entry marking the end */
+    private final int[] coreEdgeStarts;
+    /** The core vertex at the end of each edge between core vertices */
+    private final int[] coreEdgeTargets;
+    /** The weight of each edge between core vertices */
+    private final int[] coreEdgeWeights;
+    /** In ALL_PAIRS mode, the shortest paths between every pair of core vertices; null in ON_DEMAND mode */
+    private final FloydWarshall coreShortestPaths;
+    /**
+     * The length of the shortest path from every vertex, indexed by ID, to each address asked for with getDistanceTo;
+     * cleared when addresses are attached. Concurrent, as paths may be looked up from many threads at once
+     */
+    private final ConcurrentHashMap<String, int[]> distancesTo = new ConcurrentHashMap<>();
 
     /**
-     * Constructor to instantiate a new LocationGraph instance.
+     * Constructor to instantiate a new LocationGraph instance, finding its edges and the shortest paths between every
+     * pair of vertices with DEFAULT_PARALLELISM threads.
      *
      * @param words a Words instance storing the details of all the w3w addresses read from the web server
      * @param zones a NoFlyZones instance storing the details of all the no-fly-zones read from the web server
      */
     public LocationGraph(Words words, NoFlyZones zones){
+        this(words, zones, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructor to instantiate a new LocationGraph instance, finding the shortest paths between every pair of
+     * vertices.
+     *
+     * The graph built is the same whatever the number of threads used.
+     *
+     * @param words a Words instance storing the details of all the w3w addresses read from the web server
+     * @param zones a NoFlyZones instance storing the details of all the no-fly-zones read from the web server
+     * @param parallelism the number of threads used to find the edges of the graph and the shortest paths through it
+     */
+    public LocationGraph(Words words, NoFlyZones zones, int parallelism){
+        this(words, zones, parallelism, ShortestPathMode.ALL_PAIRS, DijkstraShortestPaths.DEFAULT_MAX_CACHE_BYTES);
+    }
+
+    /**
+     * Constructor to instantiate a new LocationGraph instance, choosing how the shortest paths through it are found.
+     *
+     * In ALL_PAIRS mode the paths between every pair of vertices are found here, taking time cubic and memory square
+     * in the number of vertices. In ON_DEMAND mode the paths from a vertex are found the first time one is asked for,
+     * and kept while the results of all searches take no more than maxCacheBytes; this suits large graphs of which few
+     * vertices are ever the start of a path. The lengths of the paths found are the same in either mode, though ties
+     * between equally short paths may be broken differently.
+     *
+     * @param words a Words instance storing the details of all the w3w addresses read from the web server
+     * @param zones a NoFlyZones instance storing the details of all the no-fly-zones read from the web server
+     * @param parallelism the number of threads used to find the edges of the graph, and in ALL_PAIRS mode the shortest
+     *                    paths through it
+     * @param mode how the shortest paths through the graph are found
+     * @param maxCacheBytes in ON_DEMAND mode, the most memory the paths found may take in bytes
+     */
+    public LocationGraph(Words words, NoFlyZones zones, int parallelism, ShortestPathMode mode, long maxCacheBytes){
+        this(words, zones, words.getWordsMap().keySet(), parallelism, mode, maxCacheBytes, null);
+    }
+
+    /**
+     * Constructor to instantiate a new LocationGraph instance whose core vertices are the given addresses, finding the
+     * shortest paths between every pair of them with DEFAULT_PARALLELISM threads, and reusing the results of an
+     * earlier run stored in a GraphCache file.
+     *
+     * @param words a Words instance storing the details of all the w3w addresses read from the web server
+     * @param zones a NoFlyZones instance storing the details of all the no-fly-zones read from the web server
+     * @param coreAddresses the addresses which are vertices of the graph every day, such as shops and landmarks
+     * @param cacheFile the path of the GraphCache file to be read, and written if it is missing or stale
+     */
+    public LocationGraph(Words words, NoFlyZones zones, Collection<String> coreAddresses, Path cacheFile){
+        this(words, zones, coreAddresses, DEFAULT_PARALLELISM, ShortestPathMode.ALL_PAIRS, DijkstraShortestPaths.DEFAULT_MAX_CACHE_BYTES, cacheFile);
+    }
+
+    /**
+     * Constructor to instantiate a new LocationGraph instance whose core vertices are the given addresses, choosing
+     * how the shortest paths through it are found and whether the results of an earlier run are reused.
+     *
+     * The core vertices are those which stay the same from day to day; each day's delivery addresses are added with
+     * attach. If a GraphCache file is given and was written from the same core addresses, coordinates and
+     * no-fly-zones, the edges between core vertices are read from it rather than found, as are the shortest paths in
+     * ALL_PAIRS mode if it holds them. Otherwise the file is written once they have been found.
+     *
+     * @param words a Words instance storing the details of all the w3w addresses read from the web server
+     * @param zones a NoFlyZones instance storing the details of all the no-fly-zones read from the web server
+     * @param coreAddresses the addresses which are vertices of the graph every day, such as shops and landmarks
+     * @param parallelism the number of threads used to find the edges of the graph, and in ALL_PAIRS mode the shortest
+     *                    paths through it
+     * @param mode how the shortest paths through the graph are found
+     * @param maxCacheBytes in ON_DEMAND mode, the most memory the paths found may take in bytes
+     * @param cacheFile the path of the GraphCache file to be used, or null if none is
+     */
+    public LocationGraph(Words words, NoFlyZones zones, Collection<String> coreAddresses, int parallelism,
+                         ShortestPathMode mode, long maxCacheBytes, Path cacheFile){
+        if(parallelism < 1){
+            System.err.println(String.format("Fatal error in LocationGraph: parallelism must be at least 1, not %d.", parallelism));
+            System.exit(1);
+        }
         this.words = words;
         this.zones = zones;
-        findEdgeWeights();
-        buildGraph();
-        floydWarshall = new FloydWarshallShortestPaths(g);
+        this.parallelism = parallelism;
+        this.mode = mode;
+        this.maxCacheBytes = maxCacheBytes;
+        this.addresses = new LinkedHashSet<>(coreAddresses).toArray(new String[0]);
+        for(int v = 0; v < addresses.length; v++){
+            vertexIds.put(addresses[v], v);
+        }
+        this.numCoreVertices = addresses.length;
+
+        byte[] cacheKey = (cacheFile != null) ? GraphCache.findKey(addresses, words, zones) : null;
+        GraphCache cached = (cacheFile != null) ? GraphCache.load(cacheFile, cacheKey) : null;
+        if(cached != null){
+            edgeStarts = cached.edgeStarts;
+            edgeTargets = cached.edgeTargets;
+            edgeWeights = cached.edgeWeights;
+        }else{
+            findEdgeWeights(0);
+        }
+        this.coreEdgeStarts = edgeStarts;
+        this.coreEdgeTargets = edgeTargets;
+        this.coreEdgeWeights = edgeWeights;
+        printVertices(0);
+        printEdges(0);
+
+        if(mode == ShortestPathMode.ON_DEMAND){
+            coreShortestPaths = null;
+            shortestPaths = new DijkstraShortestPaths(addresses.length, edgeStarts, edgeTargets, edgeWeights, maxCacheBytes);
+        }else if(cached != null && cached.shortestPaths != null){
+            coreShortestPaths = cached.shortestPaths;
+            shortestPaths = coreShortestPaths;
+        }else{
+            coreShortestPaths = new FloydWarshall(addresses.length, edgeStarts, edgeTargets, edgeWeights, parallelism);
+            shortestPaths = coreShortestPaths;
+        }
+
+        // Write the cache if it was missing or stale, or lacked shortest paths that have now been found.
+        if(cacheFile != null && (cached == null || (cached.shortestPaths == null && coreShortestPaths != null))){
+            new GraphCache(addresses, edgeStarts, edgeTargets, edgeWeights, coreShortestPaths).save(cacheFile, cacheKey);
+        }
     }
 
-    /** Populates the vertices and edges of the graph */
-    private void buildGraph(){
-        if(isEmpty(g)){
-            addVertices();
-            addEdges();
+    /**
+     * Attaches a day's addresses, such as those orders are to be delivered to, to the core vertices of the graph,
+     * replacing any attached before. Addresses which are already core vertices are skipped.
+     *
+     * Only the edges between each attached address and every other vertex are found. In ALL_PAIRS mode, the shortest
+     * paths are then extended from a copy of those between the core vertices, taking time square rather than cubic in
+     * the number of vertices for each address attached; the core paths are kept for the next call.
+     *
+     * @param dayAddresses the addresses to be attached
+     */
+    public void attach(Collection<String> dayAddresses){
+        LinkedHashSet<String> attached = new LinkedHashSet<>(Arrays.asList(addresses).subList(0, numCoreVertices));
+        attached.addAll(dayAddresses);
+        for(int v = numCoreVertices; v < addresses.length; v++){
+            vertexIds.remove(addresses[v]);
+        }
+        addresses = attached.toArray(new String[0]);
+        for(int v = numCoreVertices; v < addresses.length; v++){
+            vertexIds.put(addresses[v], v);
+        }
+        distancesTo.clear();
+
+        findEdgeWeights(numCoreVertices);
+        printVertices(numCoreVertices);
+        printEdges(numCoreVertices);
+        if(mode == ShortestPathMode.ON_DEMAND){
+            shortestPaths = new DijkstraShortestPaths(addresses.length, edgeStarts, edgeTargets, edgeWeights, maxCacheBytes);
+        }else{
+            shortestPaths = coreShortestPaths.extend(addresses.length, edgeStarts, edgeTargets, edgeWeights);
         }
+        System.out.println(String.format("ATTACHED %d ADDRESSES TO %d CORE VERTICES\n", addresses.length - numCoreVertices, numCoreVertices));
     }
 
-    /** Adds a vertex to the graph for each key (address) stored in the Words instance. */
-    private void addVertices(){
-        Set<String> keys = words.getWordsMap().keySet();
-        for(String key: keys){
-            g.addVertex(key);
-            System.out.println(key);
+    /**
+     * Prints the address of each vertex of the graph from a given ID onwards.
+     *
+     * @param first the ID of the first vertex to be printed
+     */
+    private void printVertices(int first){
+        for(int v = first; v < addresses.length; v++){
+            System.out.println(addresses[v]);
         }
         System.out.println("vertices done\n");
     }
 
-    /** Adds all edges and their weights found in the weightMap to the graph */
-    private void addEdges(){
-        for (Map.Entry<String, Integer> entry : weightMap.entrySet()) {
-            // Keys in Words.edgeMap consist of the start location's w3w address and the end location's address
-            // joined by a "."
-            ArrayList<String> constituentKeys = splitWeightMapKey(entry.getKey());
-            String fromKey = constituentKeys.get(0);
-            String toKey = constituentKeys.get(1);
-            DefaultWeightedEdge edge = g.addEdge(fromKey, toKey);
-            g.setEdgeWeight(edge, entry.getValue());
-            System.out.println(fromKey + " " + toKey);
+    /**
+     * Prints the addresses at either end of each edge of the graph with at least one end from a given ID onwards.
+     *
+     * @param first the ID of the first vertex whose edges are to be printed
+     */
+    private void printEdges(int first){
+        for(int from = 0; from < addresses.length; from++){
+            for(int e = edgeStarts[from]; e < edgeStarts[from+1]; e++){
+                if(from >= first || edgeTargets[e] >= first){
+                    System.out.println(addresses[from] + " " + addresses[edgeTargets[e]]);
+                }
+            }
         }
         System.out.println("edges done \n");
     }
@@ -94,7 +272,10 @@ public class LocationGraph {
     /**
      * Finds the shortest path for the drone to follow to visit all the locations it needs to in order to make a delivery.
      *
-     * Please see main class documentation for clarity on what exactly constitutes a path.
+     * The order in which the shops are visited is found by PickupRouting from the lengths of the shortest paths
+     * between the stops alone; exactly for up to PickupRouting.MAX_EXACT_PICKUPS shops, and by a heuristic for more.
+     * Only the path through the stops in that order is built. Please see main class documentation for clarity on what
+     * exactly constitutes a path.
      *
      * @param startLoc the w3w address that the drone is currently close to
      * @param pickUpLocs the shop(s) that the drone must visit to pick up the items in the order
@@ -102,88 +283,143 @@ public class LocationGraph {
      * @return A List<List<String>> where each nested List is a List of w3w addresses for the drone to visit to get from
      *         one parameter location to the next
      */
-    public List<List<String>> getW3wPathFromGraph(String startLoc, ArrayList<String> pickUpLocs, String delivLoc){
-        switch(pickUpLocs.size()){
-            case 1:{
-                // Only one shop so simply retrieve it.
-                String shopLoc = pickUpLocs.get(0);
-                ArrayList<String> locsToVisit = new ArrayList<>(Arrays.asList(startLoc, shopLoc, delivLoc));
-                return getGraphPath(locsToVisit);
-            }
-            case 2:{
-                String shopOneLoc = pickUpLocs.get(0);
-                String shopTwoLoc = pickUpLocs.get(1);
-
-                // 2 shops; need to try both possible orderings of them to see which is fastest.
-                ArrayList<String> locsToVisit = new ArrayList<>(Arrays.asList(startLoc, shopOneLoc, shopTwoLoc, delivLoc));
-                List<List<String>> pathOne = getGraphPath(locsToVisit);
+    public List<List<String>> getW3wPathFromGraph(String startLoc, List<String> pickUpLocs, String delivLoc){
+        return getGraphPath(findStops(startLoc, pickUpLocs, delivLoc));
+    }
 
-                locsToVisit = new ArrayList<>(Arrays.asList(startLoc, shopTwoLoc, shopOneLoc, delivLoc));
-                List<List<String>> pathTwo = getGraphPath(locsToVisit);
+    /**
+     * Finds the weight of the path getW3wPathFromGraph would give, without building it.
+     *
+     * @param startLoc the w3w address that the drone is currently close to
+     * @param pickUpLocs the shop(s) that the drone must visit to pick up the items in the order
+     * @param delivLoc the delivery location selected by the user
+     * @return the total weight of each edge traversed along the path, or ShortestPaths.NO_PATH if there is none
+     */
+    public int getDeliveryWeight(String startLoc, List<String> pickUpLocs, String delivLoc){
+        int[] stops = findStops(startLoc, pickUpLocs, delivLoc);
+        int totalWeight = 0;
+        for(int i = 0; i < stops.length-1; i++){
+            totalWeight = Math.min(ShortestPaths.NO_PATH, totalWeight + getSubPathWeight(stops[i], stops[i+1]));
+        }
+        return totalWeight;
+    }
 
-                if(getPathWeight(pathOne) > getPathWeight(pathTwo)){
-                    return pathTwo;
-                }else{
-                    return pathOne;
-                }
-            }
-            default:{
-                System.err.println("Fatal error in LocationGraph.getW3wPath: Number of pickup locations must be 1 or 2.");
-                System.exit(1);
-                return null;
-            }
+    /**
+     * Finds the stops of the shortest path for the drone to follow to make a delivery, ordering the shops with
+     * PickupRouting.
+     *
+     * @param startLoc the w3w address that the drone is currently close to
+     * @param pickUpLocs the shop(s) that the drone must visit to pick up the items in the order
+     * @param delivLoc the delivery location selected by the user
+     * @return the IDs of the vertices the path must visit, in order
+     */
+    private int[] findStops(String startLoc, List<String> pickUpLocs, String delivLoc){
+        if(pickUpLocs.isEmpty()){
+            System.err.println("Fatal error in LocationGraph.getW3wPath: There must be at least 1 pickup location.");
+            System.exit(1);
+            return null;
         }
+        int start = getVertexId(startLoc);
+        int deliv = getVertexId(delivLoc);
+        int[] pickUps = new int[pickUpLocs.size()];
+        for(int i = 0; i < pickUps.length; i++){
+            pickUps[i] = getVertexId(pickUpLocs.get(i));
+        }
+        return PickupRouting.findStops(start, pickUps, deliv, shortestPaths);
     }
 
     /**
-     * Finds the number of moves that a path between nodes in the graph takes and returns its total
-     * weight as the sum of the weights of each edge visited.
+     * Calculates the weight of the shortest sub-path between 2 vertices. This is the number of moves taken to get
+     * from the vertex at the start of the sub-path to the one at the end.
      *
-     * Please see main class documentation for clarity on what exactly constitutes a path.
+     * Please see main class documentation for clarity on what exactly constitutes a path and a sub-path.
      *
-     * @param path The path whose weight is to be calculated
-     * @return the total weight of each edge traversed along the path
+     * @param start the ID of the vertex at the start of the sub-path
+     * @param end the ID of the vertex at the end of the sub-path
+     * @return the total weight of each edge traversed along the sub path
      */
-    private int getPathWeight(List<List<String>> path){
+    private int getSubPathWeight(int start, int end){
+        return shortestPaths.getDistance(start, end);
+    }
+
+    /**
+     * Finds the number of moves that a path found by getW3wPathFromGraph takes, as getDeliveryWeight does, without
+     * simulating any of them.
+     *
+     * @param w3wPath the path, as returned by getW3wPathFromGraph
+     * @return the total weight of each edge traversed along the path, or ShortestPaths.NO_PATH if there is none
+     */
+    public int getW3wPathWeight(List<List<String>> w3wPath){
         int totalWeight = 0;
-        for(List<String> subpath: path){
-            totalWeight += getSubPathWeight(subpath);
+        for(List<String> subPath : w3wPath){
+            int subPathWeight = getSubPathWeight(getVertexId(subPath.get(0)), getVertexId(subPath.get(subPath.size() - 1)));
+            totalWeight = Math.min(ShortestPaths.NO_PATH, totalWeight + subPathWeight);
         }
         return totalWeight;
     }
 
     /**
-     * Calculates the weight of a sub-path in a path. This is the number of moves taken to get from the
-     * vertex at the start of the sub-path to the one at the end.
+     * Gets the length of the shortest path from one address to another, such as the drone's base.
      *
-     * Please see main class documentation for clarity on what exactly constitutes a path and a sub-path.
+     * The lengths of the paths from every vertex to an address are found together the first time any is asked for,
+     * with a single search of the graph with its edges reversed, and kept until addresses are next attached.
      *
-     * @param subPath the subpath whose weight is to be calculated
-     * @return the total weight of each edge traversed along the sub path
+     * @param from the w3w address at the start of the path
+     * @param to the w3w address at the end of the path
+     * @return the sum of the weights of the edges along the path, or ShortestPaths.NO_PATH if there is none
+     */
+    public int getDistanceTo(String from, String to){
+        int[] distances = distancesTo.computeIfAbsent(to, address -> findDistancesTo(getVertexId(address)));
+        return distances[getVertexId(from)];
+    }
+
+    /**
+     * Finds the length of the shortest path from every vertex to one vertex, by searching from it along the edges of
+     * the graph reversed.
+     *
+     * @param target the ID of the vertex at the end of the paths
+     * @return the length of the shortest path from each vertex, indexed by ID, or ShortestPaths.NO_PATH if there is
+     *         none
      */
-    private int getSubPathWeight(List<String> subPath){
-        int subPathWeight = 0;
-        for(int i = 0; i < subPath.size()-1; i++){
-            String startVertex = subPath.get(i);
-            String endVertex = subPath.get(i+1);
-            DefaultWeightedEdge edge = g.getEdge(startVertex, endVertex);
-            subPathWeight += g.getEdgeWeight(edge);
+    private int[] findDistancesTo(int target){
+        int numVertices = addresses.length;
+        int[] reverseStarts = new int[numVertices + 1];
+        for(int e = 0; e < edgeStarts[numVertices]; e++){
+            reverseStarts[edgeTargets[e] + 1]++;
+        }
+        for(int v = 0; v < numVertices; v++){
+            reverseStarts[v+1] += reverseStarts[v];
+        }
+        int[] reverseTargets = new int[edgeTargets.length];
+        int[] reverseWeights = new int[edgeWeights.length];
+        int[] next = Arrays.copyOf(reverseStarts, numVertices);
+        for(int from = 0; from < numVertices; from++){
+            for(int e = edgeStarts[from]; e < edgeStarts[from+1]; e++){
+                int i = next[edgeTargets[e]]++;
+                reverseTargets[i] = from;
+                reverseWeights[i] = edgeWeights[e];
+            }
+        }
+
+        // Only the one search is needed, so no more is kept.
+        ShortestPaths reverse = new DijkstraShortestPaths(numVertices, reverseStarts, reverseTargets, reverseWeights, 0);
+        int[] distances = new int[numVertices];
+        for(int v = 0; v < numVertices; v++){
+            distances[v] = reverse.getDistance(target, v);
         }
-        return subPathWeight;
+        return distances;
     }
 
     /**
-     * Gets the shortest path that visits every vertex specified in locsToVisit in order.
+     * Gets the shortest path that visits every vertex specified in stops in order.
      *
-     * @param locsToVisit the vertices that must be visited along the path, in order
-     * @return the shortest path that visits each of these vertices in order
+     * @param stops the IDs of the vertices that must be visited along the path, in order
+     * @return the shortest path that visits each of these vertices in order, as w3w addresses
      */
-    private List<List<String>> getGraphPath(ArrayList<String> locsToVisit){
+    private List<List<String>> getGraphPath(int[] stops){
         List<List<String>> path = new ArrayList<>();
-        for(int i=0; i < locsToVisit.size()-1; i++){
-            String currLoc = locsToVisit.get(i);
-            String nxtLoc = locsToVisit.get(i+1);
-            path.add(getShortestPath(currLoc, nxtLoc));
+        for(int i=0; i < stops.length-1; i++){
+            path.add(getShortestPath(stops[i], stops[i+1]));
         }
         return path;
     }
@@ -198,66 +434,158 @@ public class LocationGraph {
      * @return the shortest path between the 2 as a List of w3w addresses (vertices)
      */
     public List<String> getShortestPath(String start, String end){
-        return floydWarshall.getPath(start, end).getVertexList();
+        return getShortestPath(getVertexId(start), getVertexId(end));
+    }
+
+    /**
+     * Gets the shortest path through the graph between 2 vertices given by their IDs.
+     *
+     * @param start the ID of the vertex at the start of the path
+     * @param end the ID of the vertex at the end of the path
+     * @return the shortest path between the 2 as a List of w3w addresses
+     */
+    private List<String> getShortestPath(int start, int end){
+        // Allocated per call so that paths can be found from many threads at once.
+        int[] pathBuffer = new int[addresses.length];
+        int length = shortestPaths.getPath(start, end, pathBuffer);
+        if(length == 0){
+            System.err.println(String.format("Fatal error in LocationGraph.getShortestPath: no path from %s to %s.", addresses[start], addresses[end]));
+            System.exit(1);
+            return null;
+        }
+        List<String> w3wPath = new ArrayList<>(length);
+        for(int i = 0; i < length; i++){
+            w3wPath.add(addresses[pathBuffer[i]]);
+        }
+        return w3wPath;
+    }
+
+    /**
+     * Gets the vertex ID of a w3w address.
+     *
+     * @param w3wAddress the address whose ID is wanted
+     * @return the ID of the address
+     */
+    private int getVertexId(String w3wAddress){
+        Integer id = vertexIds.get(w3wAddress);
+        if(id == null){
+            System.err.println(String.format("Fatal error in LocationGraph.getVertexId: %s is not a vertex of the graph.", w3wAddress));
+            System.exit(1);
+            return -1;
+        }
+        return id;
     }
 
     /**
-     * Merges a path, into one ArrayList of What3Words.LongLat objects i.e., a single, long 'sub-path'.
+     * Merges a path, into one FlightPath i.e., a single, long 'sub-path'.
      *
      * Please see main class documentation for clarity on path/sub-path terminology.
      *
      * @param path the path whose sub-paths are to be merged
-     * @return the ArrayList containing the merged sub-paths
+     * @return the FlightPath containing the merged sub-paths
      */
-    public static ArrayList<LongLat> mergeSubPaths(ArrayList<ArrayList<LongLat>> path){
-        ArrayList<LongLat> mergedPath = new ArrayList<>();
-        for(ArrayList<LongLat> subPath : path){
+    public static FlightPath mergeSubPaths(ArrayList<FlightPath> path){
+        int numPoints = 0;
+        for(FlightPath subPath : path){
+            numPoints += subPath.size();
+        }
+        FlightPath mergedPath = new FlightPath(numPoints);
+        for(FlightPath subPath : path){
             mergedPath.addAll(subPath);
         }
         return mergedPath;
     }
 
     /**
-     * Populates the edgeMap with the paths between What3WordsLoc instances.
+     * Populates the edge arrays with the paths between What3WordsLoc instances.
      *
-     * Iterates over every pair of entries in the wordsMap and checks if a legal, straight
-     * path between them exists. If it does, an entry is added to the edgeMap with key = start_address
-     * + "." + end_address and value = an ArrayList of What3WordsLoc.LongLat instances, representing
-     * points to which moves are made along the path.
+     * Iterates over pairs of vertices and checks if a legal, straight path between their locations exists. If it
+     * does, an edge is added whose weight is the number of points along the path. The paths are only counted, with
+     * LongLat.countMovesTo; their points are found when the drone flies them. How many pairs were found clear of,
+     * or blocked by, the no-fly-zones before any move was checked is printed. Only pairs with at least one vertex
+     * from firstNew onwards are checked; the edges between the vertices before it are the core edges, which are
+     * copied as they are. The start vertices are independent of one another, so they are shared out between
+     * parallelism threads, each filling in the edges of its own vertices.
+     *
+     * @param firstNew the ID of the first vertex whose edges are to be found; 0 to find every edge
      */
-    private void findEdgeWeights(){
-        HashMap<String, What3WordsLoc> wordsMap = words.getWordsMap();
-        for (HashMap.Entry<String, What3WordsLoc> from : wordsMap.entrySet()) {
-            for(HashMap.Entry<String, What3WordsLoc> to : wordsMap.entrySet()) {
-                if (!from.equals(to)) {
-                    LongLat fromPoint = from.getValue().coordinates;
-                    LongLat toPoint = to.getValue().coordinates;
-                    ArrayList<LongLat> edge = fromPoint.getPathTo(toPoint, zones);
-                    // a legal path between the 2 locations exists.
-                    if (!(edge.isEmpty())) {
-                        String key = from.getKey() + "." + to.getKey();
-                        weightMap.put(key, Integer.valueOf(edge.size()));
-                    }
-                }
+    private void findEdgeWeights(int firstNew){
+        int numVertices = addresses.length;
+        LongLat[] points = new LongLat[numVertices];
+        for(int v = 0; v < numVertices; v++){
+            points[v] = words.getLocOfAddr(addresses[v]).coordinates;
+        }
+
+        int[][] targetsFrom = new int[numVertices][];
+        int[][] weightsFrom = new int[numVertices][];
+        int[][] pathClassesFrom = new int[numVertices][PathClass.values().length];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, numVertices).parallel()
+                    .forEach(from -> findEdgeWeightsFrom(from, (from < firstNew) ? firstNew : 0, points, targetsFrom,
+                            weightsFrom, pathClassesFrom[from]))).get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Fatal error in LocationGraph.findEdgeWeights: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+        int[] pathClassCounts = new int[PathClass.values().length];
+        for(int[] counts : pathClassesFrom){
+            for(int c = 0; c < counts.length; c++){
+                pathClassCounts[c] += counts[c];
             }
         }
+        System.out.println(String.format("SWEPT %d PAIRS: %d CLEAR, %d BLOCKED, %d AMBIGUOUS\n",
+                Arrays.stream(pathClassCounts).sum(), pathClassCounts[PathClass.CLEAR.ordinal()],
+                pathClassCounts[PathClass.BLOCKED.ordinal()], pathClassCounts[PathClass.AMBIGUOUS.ordinal()]));
+
+        // The core edges from each core vertex all end before firstNew, so they come first.
+        edgeStarts = new int[numVertices + 1];
+        for(int v = 0; v < numVertices; v++){
+            int numCoreEdges = (v < firstNew) ? coreEdgeStarts[v+1] - coreEdgeStarts[v] : 0;
+            edgeStarts[v+1] = edgeStarts[v] + numCoreEdges + targetsFrom[v].length;
+        }
+        edgeTargets = new int[edgeStarts[numVertices]];
+        edgeWeights = new int[edgeStarts[numVertices]];
+        for(int v = 0; v < numVertices; v++){
+            int numCoreEdges = (v < firstNew) ? coreEdgeStarts[v+1] - coreEdgeStarts[v] : 0;
+            if(numCoreEdges > 0){
+                System.arraycopy(coreEdgeTargets, coreEdgeStarts[v], edgeTargets, edgeStarts[v], numCoreEdges);
+                System.arraycopy(coreEdgeWeights, coreEdgeStarts[v], edgeWeights, edgeStarts[v], numCoreEdges);
+            }
+            System.arraycopy(targetsFrom[v], 0, edgeTargets, edgeStarts[v] + numCoreEdges, targetsFrom[v].length);
+            System.arraycopy(weightsFrom[v], 0, edgeWeights, edgeStarts[v] + numCoreEdges, weightsFrom[v].length);
+        }
     }
 
     /**
-     * Splits a combined key of the edgeMap into its 2 constituent what3words addresses.
+     * Finds the edges from one vertex to every other from a given ID onwards.
      *
-     * @param combinedKey the combined key to be split
-     * @return an ArrayList containing the 2 constituent keys that made up the combined key
+     * @param from the ID of the vertex at the start of the edges
+     * @param firstTarget the ID of the first vertex which may be at the end of the edges
+     * @param points the location of every vertex, indexed by ID
+     * @param targetsFrom the array whose entry for from is set to the vertices at the end of the edges found
+     * @param weightsFrom the array whose entry for from is set to the weights of the edges found
+     * @param pathClassCounts the number of pairs from the vertex sorted into each PathClass, indexed by ordinal
      */
-    private static ArrayList<String> splitWeightMapKey(String combinedKey){
-        String[] keyWords = combinedKey.split("\\.");
-        if(keyWords.length != 2*Words.W3W_ADDRESS_LEN){
-            System.err.println(String.format("Fatal error in Words.splitCombinedKey: %s is an invalid combined key.", combinedKey));
-            System.exit(1);
-            return null;
+    private void findEdgeWeightsFrom(int from, int firstTarget, LongLat[] points, int[][] targetsFrom, int[][] weightsFrom,
+                                     int[] pathClassCounts){
+        int[] targets = new int[points.length - firstTarget];
+        int[] weights = new int[points.length - firstTarget];
+        int numEdges = 0;
+        for(int to = firstTarget; to < points.length; to++){
+            if(from != to){
+                int moves = points[from].countMovesTo(points[to], zones, pathClassCounts);
+                // a legal path between the 2 locations exists.
+                if(moves != LongLat.NO_PATH){
+                    targets[numEdges] = to;
+                    weights[numEdges] = moves + 1;
+                    numEdges++;
+                }
+            }
         }
-        String keyOne = String.format("%s.%s.%s", keyWords[0], keyWords[1], keyWords[2]);
-        String keyTwo = String.format("%s.%s.%s", keyWords[3], keyWords[4], keyWords[5]);
-        return new ArrayList<String>(Arrays.asList(keyOne, keyTwo));
+        targetsFrom[from] = Arrays.copyOf(targets, numEdges);
+        weightsFrom[from] = Arrays.copyOf(weights, numEdges);
     }
 }
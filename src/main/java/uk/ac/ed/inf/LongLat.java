@@ -1,7 +1,5 @@
 package uk.ac.ed.inf;
 
-import java.util.ArrayList;
-
 /**
  * Represents a coordinate pair.
  *
@@ -29,8 +27,53 @@ public class LongLat {
     public static final int JUNK_ANGLE = -999;
     /** The length of any move the drone makes in degrees */
     public static final double MOVE_DISTANCE = 0.00015;
+    /** The number of moves returned by countMovesTo when no legal, straight path exists */
+    public static final int NO_PATH = -1;
+    /**
+     * The furthest in degrees a path is assumed to stray from the straight line between its ends when its moves are
+     * counted without checking each against the no-fly-zones; paths stray up to about 1.3 moves, mostly by
+     * overshooting the end point.
+     */
+    private static final double CORRIDOR_DEVIATION = 1.5 * MOVE_DISTANCE;
     /** The location of Appleton Tower */
     public static final LongLat AT_LOC = new LongLat(-3.186874, 55.944494);
+    /** The change in longitude of a move on each legal bearing, indexed by the bearing divided by ANGLE_SCALE */
+    private static final double[] STEP_LNGS = new double[MAX_ANGLE / ANGLE_SCALE + 1];
+    /** The change in latitude of a move on each legal bearing, indexed by the bearing divided by ANGLE_SCALE */
+    private static final double[] STEP_LATS = new double[MAX_ANGLE / ANGLE_SCALE + 1];
+    /**
+     * The distance in degrees within which a bearing found by fastAtan2 is treated as lying on the boundary between
+     * 2 legal bearings, and is found again exactly. This is far larger than the error of fastAtan2.
+     */
+    private static final double BEARING_BOUNDARY_MARGIN = 0.01;
+    /**
+     * The relative distance from DISTANCE_TOLERANCE squared within which a squared distance is checked again with
+     * Math.hypot, to allow for the rounding of the squares.
+     */
+    private static final double CLOSE_TO_MARGIN = 1e-9;
+    /**
+     * The longitude component of the unit vector along the boundary before each legal bearing, half of ANGLE_SCALE
+     * anticlockwise of it, indexed by the bearing divided by ANGLE_SCALE
+     */
+    private static final double[] BOUNDARY_LNGS = new double[MAX_ANGLE / ANGLE_SCALE + 1];
+    /**
+     * The latitude component of the unit vector along the boundary before each legal bearing, half of ANGLE_SCALE
+     * anticlockwise of it, indexed by the bearing divided by ANGLE_SCALE
+     */
+    private static final double[] BOUNDARY_LATS = new double[MAX_ANGLE / ANGLE_SCALE + 1];
+    /** The square of the sine of BEARING_BOUNDARY_MARGIN */
+    private static final double BOUNDARY_MARGIN_SIN_SQ =
+            Math.pow(Math.sin(Math.toRadians(BEARING_BOUNDARY_MARGIN)), 2);
+
+    static {
+        // Computed exactly as nextPosition always has, so that the moves made are the same to the last bit.
+        for (int i = 0; i < STEP_LNGS.length; i++) {
+            STEP_LNGS[i] = MOVE_DISTANCE * Math.cos(Math.toRadians(i * ANGLE_SCALE));
+            STEP_LATS[i] = MOVE_DISTANCE * Math.sin(Math.toRadians(i * ANGLE_SCALE));
+            BOUNDARY_LNGS[i] = Math.cos(Math.toRadians(i * ANGLE_SCALE - ANGLE_SCALE / 2.0));
+            BOUNDARY_LATS[i] = Math.sin(Math.toRadians(i * ANGLE_SCALE - ANGLE_SCALE / 2.0));
+        }
+    }
 
     /** The longitude component of the coordinate */
     public final double lng;
@@ -55,7 +98,18 @@ public class LongLat {
      */
     @Override
     public String toString() {
-        return "longitude: " + this.lng + "\n" + "latitude: " + this.lat;
+        return toString(this.lng, this.lat);
+    }
+
+    /**
+     * Gives the String representation of a coordinate pair in the same form as toString, without a LongLat instance.
+     *
+     * @param lng the longitude component of the coordinate
+     * @param lat the latitude component of the coordinate
+     * @return a String representation of the coordinate
+     */
+    public static String toString(double lng, double lat) {
+        return "longitude: " + lng + "\n" + "latitude: " + lat;
     }
 
     public boolean equals(LongLat point) {
@@ -72,6 +126,17 @@ public class LongLat {
      * @return true if coordinate lies within the confinement area, false otherwise
      */
     public boolean isConfined() {
+        return isConfined(this.lng, this.lat);
+    }
+
+    /**
+     * Checks if a point, given as longitude and latitude components, lies within the confinement area.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return true if the point lies within the confinement area, false otherwise
+     */
+    public static boolean isConfined(double lng, double lat) {
         boolean lngConfined = (lng < MAX_LONGITUDE) && (lng > MIN_LONGITUDE);
         boolean latConfined = (lat < MAX_LATITUDE) && (lat > MIN_LATITUDE);
 
@@ -99,7 +164,30 @@ public class LongLat {
      */
     public boolean closeTo(LongLat point) {
         isPointNull(point);
-        return this.distanceTo(point) < DISTANCE_TOLERANCE;
+        return closeTo(this.lng, this.lat, point.lng, point.lat);
+    }
+
+    /**
+     * Determines if one point is 'close to' another, with both given as longitude and latitude components.
+     *
+     * The squared distance between the points is compared with DISTANCE_TOLERANCE squared, avoiding the cost of
+     * Math.hypot, unless the 2 are so near that rounding could make the answer differ from that of distanceTo.
+     *
+     * @param lng the longitude of the first point
+     * @param lat the latitude of the first point
+     * @param toLng the longitude of the second point
+     * @param toLat the latitude of the second point
+     * @return true if the points are within DISTANCE_TOLERANCE degrees of each other, false otherwise
+     */
+    public static boolean closeTo(double lng, double lat, double toLng, double toLat) {
+        double dLng = lng - toLng;
+        double dLat = lat - toLat;
+        double distanceSq = dLng * dLng + dLat * dLat;
+        double toleranceSq = DISTANCE_TOLERANCE * DISTANCE_TOLERANCE;
+        if (Math.abs(distanceSq - toleranceSq) <= CLOSE_TO_MARGIN * toleranceSq) {
+            return Math.hypot(dLng, dLat) < DISTANCE_TOLERANCE;
+        }
+        return distanceSq < toleranceSq;
     }
 
     /**
@@ -121,8 +209,8 @@ public class LongLat {
             System.exit(1);
             return null;
         } else {
-            double newlng = this.lng + MOVE_DISTANCE * Math.cos(Math.toRadians(angle));
-            double newlat = this.lat + MOVE_DISTANCE * Math.sin(Math.toRadians(angle));
+            double newlng = this.lng + STEP_LNGS[angle / ANGLE_SCALE];
+            double newlat = this.lat + STEP_LATS[angle / ANGLE_SCALE];
             return new LongLat(newlng, newlat);
         }
     }
@@ -152,11 +240,52 @@ public class LongLat {
      * @return the bearing to point
      */
     public int getBearingTo(LongLat point) {
-        if (this.equals(point)) {
+        return getBearing(this.lng, this.lat, point.lng, point.lat);
+    }
+
+    /**
+     * Gets the bearing from one point to another, given as longitude and latitude components, with the bearing
+     * returned being a multiple of ANGLE_SCALE and in the range [MIN_ANGLE, MAX_ANGLE].
+     *
+     * @param fromLng the longitude of the point from which the bearing is calculated
+     * @param fromLat the latitude of the point from which the bearing is calculated
+     * @param toLng the longitude of the point to which the bearing is calculated
+     * @param toLat the latitude of the point to which the bearing is calculated
+     * @return the bearing between the points, or JUNK_ANGLE if they are the same point
+     */
+    public static int getBearing(double fromLng, double fromLat, double toLng, double toLat) {
+        if ((fromLng == toLng) && (fromLat == toLat)) {
             return JUNK_ANGLE;
         }
 
-        double theta = Math.atan2(point.lat - this.lat, point.lng - this.lng);
+        // Round the fast estimate of the angle to the nearest legal bearing, unless it lies so near the boundary
+        // between 2 that the exact calculation is needed to break the tie the same way.
+        double degrees = Math.toDegrees(fastAtan2(toLat - fromLat, toLng - fromLng));
+        double scaled = degrees / ANGLE_SCALE;
+        double boundaryDistance = Math.abs(scaled - Math.floor(scaled) - 0.5) * ANGLE_SCALE;
+        if (boundaryDistance < BEARING_BOUNDARY_MARGIN) {
+            return exactBearing(fromLng, fromLat, toLng, toLat);
+        }
+        int angle = (int) Math.round(scaled) * ANGLE_SCALE;
+        if (angle < 0) {
+            angle += 360;
+        } else if (angle == 360) {
+            angle = 0;
+        }
+        return angle;
+    }
+
+    /**
+     * Gets the bearing from one point to another with Math.atan2, rounded to a legal bearing.
+     *
+     * @param fromLng the longitude of the point from which the bearing is calculated
+     * @param fromLat the latitude of the point from which the bearing is calculated
+     * @param toLng the longitude of the point to which the bearing is calculated
+     * @param toLat the latitude of the point to which the bearing is calculated
+     * @return the bearing between the points
+     */
+    private static int exactBearing(double fromLng, double fromLat, double toLng, double toLat) {
+        double theta = Math.atan2(toLat - fromLat, toLng - fromLng);
         float angle = (float) Math.toDegrees(theta);
         angle = Math.round(angle / ANGLE_SCALE) * ANGLE_SCALE;
         if (angle < 0) {
@@ -168,18 +297,248 @@ public class LongLat {
     }
 
     /**
-     * Gets the path to a specified point as an ArrayList of What3WordsLoc.LongLat objects, with
-     * each object representing a point to which a move is to be made as the path is traversed from
-     * the calling instance to point.
+     * Gets the index in the step tables of the bearing from one point to another, reusing the bearing of the
+     * previous move, or the one either side of it, while the second point stays clearly within its sector.
+     *
+     * The sector of a bearing holds every direction which rounds to it. Along a straight path the bearing either
+     * stays the same or flips to the one beside it, so those sectors are checked first, with 2 cross products each;
+     * only if the second point lies in neither, or within BEARING_BOUNDARY_MARGIN of an edge of one, is the bearing
+     * found again with getBearing.
+     *
+     * @param step the index of the bearing of the previous move, or -1 if there is none
+     * @param fromLng the longitude of the point from which the bearing is calculated
+     * @param fromLat the latitude of the point from which the bearing is calculated
+     * @param toLng the longitude of the point to which the bearing is calculated, which must differ from the first
+     * @param toLat the latitude of the point to which the bearing is calculated, which must differ from the first
+     * @return the bearing between the points divided by ANGLE_SCALE
+     */
+    private static int nextStep(int step, double fromLng, double fromLat, double toLng, double toLat) {
+        if (step >= 0) {
+            double dLng = toLng - fromLng;
+            double dLat = toLat - fromLat;
+            double marginSq = BOUNDARY_MARGIN_SIN_SQ * (dLng * dLng + dLat * dLat);
+            int numSteps = BOUNDARY_LNGS.length;
+            // The distance of the second point past the boundary before the sector, or before the sector after it.
+            double pastStart = BOUNDARY_LNGS[step] * dLat - BOUNDARY_LATS[step] * dLng;
+            int next = (step + 1 == numSteps) ? 0 : step + 1;
+            double pastEnd = BOUNDARY_LNGS[next] * dLat - BOUNDARY_LATS[next] * dLng;
+            if (pastStart > 0 && pastEnd < 0) {
+                if (pastStart * pastStart > marginSq && pastEnd * pastEnd > marginSq) {
+                    return step;
+                }
+            } else if (pastEnd >= 0) {
+                int afterNext = (next + 1 == numSteps) ? 0 : next + 1;
+                double pastAfterNext = BOUNDARY_LNGS[afterNext] * dLat - BOUNDARY_LATS[afterNext] * dLng;
+                if (pastAfterNext < 0 && pastEnd * pastEnd > marginSq && pastAfterNext * pastAfterNext > marginSq) {
+                    return next;
+                }
+            } else {
+                int previous = (step == 0) ? numSteps - 1 : step - 1;
+                double pastPrevious = BOUNDARY_LNGS[previous] * dLat - BOUNDARY_LATS[previous] * dLng;
+                if (pastPrevious > 0 && pastStart * pastStart > marginSq && pastPrevious * pastPrevious > marginSq) {
+                    return previous;
+                }
+            }
+        }
+        return getBearing(fromLng, fromLat, toLng, toLat) / ANGLE_SCALE;
+    }
+
+    /**
+     * Estimates the angle of a vector from the positive x axis, as Math.atan2 does, to within about 1e-5 radians.
+     *
+     * The vector is first reflected into the first octant, where the arctangent of the ratio of its smaller to its
+     * larger component is given by a polynomial (Abramowitz and Stegun 4.4.49), then the reflections are undone.
+     *
+     * @param y the y component of the vector
+     * @param x the x component of the vector
+     * @return the angle of the vector in radians, in the range [-pi, pi]
+     */
+    private static double fastAtan2(double y, double x) {
+        double absX = Math.abs(x);
+        double absY = Math.abs(y);
+        boolean steep = absY > absX;
+        double t = steep ? absX / absY : absY / absX;
+        double t2 = t * t;
+        double angle = t * (0.9998660 + t2 * (-0.3302995 + t2 * (0.1801410 + t2 * (-0.0851330 + t2 * 0.0208351))));
+        if (steep) {
+            angle = Math.PI / 2 - angle;
+        }
+        if (x < 0) {
+            angle = Math.PI - angle;
+        }
+        return (y < 0) ? -angle : angle;
+    }
+
+    /**
+     * Gets the path to a specified point as a FlightPath, with each point representing a point to which a move is to
+     * be made as the path is traversed from the calling instance to point.
+     *
+     * @param point the point to which the path is to be calculated
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
+     * @return a FlightPath holding the points along the path between the calling instance and point, starting with
+     * the calling instance, if a legal, straight path between them exists. Otherwise, an empty FlightPath is returned.
+     */
+    public FlightPath getPathTo(LongLat point, NoFlyZones zones) {
+        FlightPath pointsOnPath = new FlightPath();
+        addPathTo(point, zones, pointsOnPath);
+        return pointsOnPath;
+    }
+
+    /**
+     * Adds the path to a specified point to the end of a FlightPath, with each point added representing a point to
+     * which a move is to be made as the path is traversed from the calling instance to point.
+     *
+     * @param point the point to which the path is to be calculated
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
+     * @param pointsOnPath the FlightPath to which the points along the path are added, starting with the calling
+     *                     instance. It is left as it was if no legal, straight path exists.
+     * @return true if a legal, straight path between the calling instance and point exists, false otherwise
+     */
+    public boolean addPathTo(LongLat point, NoFlyZones zones, FlightPath pointsOnPath) {
+        checkPathEnds(point, zones);
+        int originalSize = pointsOnPath.size();
+        if (flyTo(point, zones, pointsOnPath) == NO_PATH) {
+            pointsOnPath.truncate(originalSize);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts the moves along the path to a specified point, without building the path.
+     *
+     * @param point the point to which the path is to be calculated
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
+     * @return the number of moves along the path, which is one less than the number of points getPathTo would
+     *         return, or NO_PATH if no legal, straight path between the calling instance and point exists
+     */
+    public int countMovesTo(LongLat point, NoFlyZones zones) {
+        return countMovesTo(point, zones, null);
+    }
+
+    /**
+     * Counts the moves along the path to a specified point, without building the path, noting the PathClass the
+     * path was sorted into.
+     *
+     * The straight line between the points is first swept against the no-fly-zones, with no move made. If the
+     * corridor CORRIDOR_DEVIATION wide around it is clear of them, no move of a path staying inside the corridor can
+     * be illegal, so the path is stepped ignoring the zones, checking only that it stays inside the corridor and the
+     * confinement area. If instead the line passes through a zone, the path is stepped in the same way up to where it
+     * passes the zone, and the point reached there alone is checked against the zones. Otherwise, or if either check
+     * fails, the path is flown with every move checked.
      *
      * @param point the point to which the path is to be calculated
      * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
      *              stored on the web server
-     * @return an ArrayList of What3Words.LongLat instances representing the points along the path between
-     * the calling instance and point, if a legal, straight path between them exists. Otherwise, an#
-     * empty ArrayList is returned.
+     * @param pathClassCounts an array, indexed by the ordinal of each PathClass, whose entry for the class the path
+     *                        was sorted into is incremented, or null if the class is not needed
+     * @return the number of moves along the path, which is one less than the number of points getPathTo would
+     *         return, or NO_PATH if no legal, straight path between the calling instance and point exists
+     */
+    public int countMovesTo(LongLat point, NoFlyZones zones, int[] pathClassCounts) {
+        checkPathEnds(point, zones);
+        double[] blockingFraction = new double[1];
+        PathClass pathClass = zones.classifyCorridor(this.lng, this.lat, point.lng, point.lat, CORRIDOR_DEVIATION,
+                blockingFraction);
+        if (pathClassCounts != null) {
+            pathClassCounts[pathClass.ordinal()]++;
+        }
+        switch (pathClass) {
+            case CLEAR:
+                return stepInCorridor(point, zones);
+            case BLOCKED:
+                return stepToBlock(point, zones, blockingFraction[0] * distanceTo(point));
+            default:
+                return flyTo(point, zones, null);
+        }
+    }
+
+    /**
+     * Steps the path to a specified point, whose corridor is clear of the no-fly-zones, without checking its moves
+     * against them.
+     *
+     * @param point the point to which the path is to be stepped
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server, against which the path is flown if it strays from the corridor
+     * @return the number of moves along the path, or NO_PATH if no legal, straight path exists
+     */
+    private int stepInCorridor(LongLat point, NoFlyZones zones) {
+        // The distance of each point from the line is found from how far it lies along the line and to one side.
+        double length = distanceTo(point);
+        double dirLng = (point.lng - this.lng) / length;
+        double dirLat = (point.lat - this.lat) / length;
+        int moves = 0;
+        int step = -1;
+        double currLng = this.lng;
+        double currLat = this.lat;
+        while (!(closeTo(currLng, currLat, point.lng, point.lat))) {
+            step = nextStep(step, currLng, currLat, point.lng, point.lat);
+            currLng += STEP_LNGS[step];
+            currLat += STEP_LATS[step];
+            // Leaving the confinement area is illegal whatever the zones, and the checked flight would take the
+            // same moves to get here.
+            if (!(isConfined(currLng, currLat))) {
+                return NO_PATH;
+            }
+            double along = (currLng - this.lng) * dirLng + (currLat - this.lat) * dirLat;
+            double aside = (currLat - this.lat) * dirLng - (currLng - this.lng) * dirLat;
+            double beyond = Math.max(0, Math.max(-along, along - length));
+            if (aside * aside + beyond * beyond > CORRIDOR_DEVIATION * CORRIDOR_DEVIATION) {
+                return flyTo(point, zones, null);
+            }
+            moves++;
+        }
+        return moves;
+    }
+
+    /**
+     * Steps the path to a specified point, whose line passes through a no-fly-zone, without checking its moves
+     * against the zones until it passes the point at which the line does.
+     *
+     * The checked flight would make the same moves, so if the first point past there is too close to the zones, the
+     * flight would fail there, if not before.
+     *
+     * @param point the point to which the path is to be stepped
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
+     * @param blockedAlong the distance in degrees along the line from the calling instance to point at which the
+     *                     line passes through a zone
+     * @return the number of moves along the path, or NO_PATH if no legal, straight path exists
+     */
+    private int stepToBlock(LongLat point, NoFlyZones zones, double blockedAlong) {
+        double length = distanceTo(point);
+        double dirLng = (point.lng - this.lng) / length;
+        double dirLat = (point.lat - this.lat) / length;
+        int step = -1;
+        double currLng = this.lng;
+        double currLat = this.lat;
+        while (!(closeTo(currLng, currLat, point.lng, point.lat))) {
+            step = nextStep(step, currLng, currLat, point.lng, point.lat);
+            currLng += STEP_LNGS[step];
+            currLat += STEP_LATS[step];
+            if (!(isConfined(currLng, currLat))) {
+                return NO_PATH;
+            }
+            if ((currLng - this.lng) * dirLng + (currLat - this.lat) * dirLat >= blockedAlong) {
+                return zones.pointTooCloseToZones(currLng, currLat) ? NO_PATH : flyTo(point, zones, null);
+            }
+        }
+        // The path reached its end before passing the zone, so says nothing of whether it is blocked.
+        return flyTo(point, zones, null);
+    }
+
+    /**
+     * Exits the program if a path cannot be calculated between the calling instance and a specified point, because
+     * either lies outside the confinement area or the point lies inside a no-fly-zone.
+     *
+     * @param point the point to which a path is to be calculated
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
      */
-    public ArrayList<LongLat> getPathTo(LongLat point, NoFlyZones zones) {
+    private void checkPathEnds(LongLat point, NoFlyZones zones) {
         isPointNull(point);
         // Checks on both to and from points; both most be confined and outside nfz's.
         if (!(point.isConfined()) || !(this.isConfined()) || zones.pointInZones(point)) {
@@ -188,28 +547,47 @@ public class LongLat {
                     "\n\nEnd point:\nLongitude: %d\nLatitude: %d" +
                     "\n\nCheck that both points are in confinement area and outside of no-fly-zones.", this.lng, this.lat, point.lng, point.lat));
             System.exit(1);
-            return null;
         }
+    }
 
-        ArrayList<LongLat> pointsOnPath = new ArrayList<>();
-        LongLat currPos = new LongLat(this.lng, this.lat);
-        ;
-        pointsOnPath.add(currPos);
-        while (!(currPos.closeTo(point))) {
-            int bearing = currPos.getBearingTo(point);
-            LongLat nextPos = currPos.nextPosition(bearing);
-            boolean confined = nextPos.isConfined();
-            boolean intersectsZones = zones.lineIntersectsZones(currPos, nextPos);
-            boolean tooCloseToZones = zones.pointTooCloseToZones(nextPos);
-            if (confined && !(intersectsZones) && !(tooCloseToZones)) {
-                pointsOnPath.add(nextPos);
-                currPos = nextPos;
+    /**
+     * Flies the path from the calling instance to a specified point, checking every move against the no-fly-zones.
+     *
+     * @param point the point to which the path is to be flown
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
+     * @param pointsOnPath the FlightPath to which the points along the path are added, starting with the calling
+     *                     instance, or null if they are only to be counted. Points are added up to the first illegal
+     *                     move, if there is one.
+     * @return the number of moves along the path, or NO_PATH if no legal, straight path exists
+     */
+    private int flyTo(LongLat point, NoFlyZones zones, FlightPath pointsOnPath) {
+        // The drone's position is stepped in place, with each move read from the step tables.
+        int moves = 0;
+        int step = -1;
+        double currLng = this.lng;
+        double currLat = this.lat;
+        if (pointsOnPath != null) {
+            pointsOnPath.add(currLng, currLat);
+        }
+        while (!(closeTo(currLng, currLat, point.lng, point.lat))) {
+            step = nextStep(step, currLng, currLat, point.lng, point.lat);
+            double nextLng = currLng + STEP_LNGS[step];
+            double nextLat = currLat + STEP_LATS[step];
+            if (isConfined(nextLng, nextLat) && !(zones.lineIntersectsZones(currLng, currLat, nextLng, nextLat))
+                    && !(zones.pointTooCloseToZones(nextLng, nextLat))) {
+                if (pointsOnPath != null) {
+                    pointsOnPath.add(nextLng, nextLat);
+                }
+                currLng = nextLng;
+                currLat = nextLat;
+                moves++;
             }
             // No legal, straight path exists between the points.
             else {
-                return new ArrayList<>();
+                return NO_PATH;
             }
         }
-        return pointsOnPath;
+        return moves;
     }
 }
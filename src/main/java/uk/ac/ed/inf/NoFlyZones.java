@@ -1,13 +1,9 @@
 package uk.ac.ed.inf;
 
-import com.mapbox.geojson.Point;
 import com.mapbox.geojson.Polygon;
-import com.mapbox.turf.TurfJoins;
-import com.mapbox.turf.TurfTransformation;
 
-import java.awt.geom.Line2D;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Represents the no-fly-zones stored on the web server.
@@ -15,13 +11,23 @@ import java.util.List;
 public class NoFlyZones {
     /** The directory on the web server at which the details of the no-fly-zones are stored */
     private final String ZONES_DIR = "/buildings/no-fly-zones.geojson";
-    /** Index of longitude in a [longitude, latitude] pairing */
-    private final int LNG_IND = 0;
-    /** Index of latitude in a [longitude, latitude] pairing */
-    private final int LAT_IND = 1;
+    /** The distance from the no-fly-zones within which a point is 'too close' to them; half a move */
+    private static final double CLEARANCE = LongLat.MOVE_DISTANCE/2;
+    /** The default width and height in degrees of the cells of the clearance raster; a fifteenth of a move */
+    public static final double DEFAULT_RASTER_CELL_SIZE = LongLat.MOVE_DISTANCE/15;
+    /** The default limit on the memory taken by the clearance raster, in bytes */
+    public static final long DEFAULT_RASTER_MAX_BYTES = 1 << 20;
+    /** Extra width in degrees given to every corridor, far above the rounding error of the distances measured */
+    private static final double CORRIDOR_MARGIN = 1e-12;
 
     /** One geojson.Polygon object to represent each no-fly-zone */
     private ArrayList<Polygon> zones = new ArrayList<>();
+    /** The no-fly-zones compiled into primitive arrays, against which all queries are run */
+    private ZoneGeometry geometry = new ZoneGeometry(zones);
+    /** Whether queries use the spatial index of the compiled zones, or scan every zone */
+    private boolean indexed = true;
+    /** Raster of the confinement area answering point queries away from zone edges; null until built */
+    private ClearanceRaster raster = null;
     /** The machine on which the web server is hosted */
     private final String machine;
     /** The on the web server to which a connection needs to be made */
@@ -38,6 +44,19 @@ public class NoFlyZones {
         this.port = port;
     }
 
+    /**
+     * Constructor to initialise a new NoFlyZones instance from zones which have already been read, rather than
+     * from the web server.
+     *
+     * @param zones one geojson.Polygon object for each no-fly-zone
+     */
+    public NoFlyZones(ArrayList<Polygon> zones){
+        this.machine = null;
+        this.port = null;
+        this.zones = zones;
+        this.geometry = new ZoneGeometry(zones);
+    }
+
     /**
      * Gets the no-fly-zones from the web server and stores them in the zones field.
      */
@@ -46,87 +65,95 @@ public class NoFlyZones {
             String url = WebServer.buildURL(this.machine, this.port, this.ZONES_DIR);
             String geoJsonStr = WebServer.getFrom(url);
             this.zones = GeoJsonParsing.parseNoFlyZones(geoJsonStr);
+            this.geometry = new ZoneGeometry(this.zones);
+            this.geometry.setIndexed(this.indexed);
+            this.raster = null;
         }
     }
 
     /**
-     * Checks if a line between 2 What3WordsLoc.LongLat points goes through any of the no-
-     * fly-zones.
+     * Builds a raster of the confinement area with the default resolution and memory limit.
+     */
+    public void buildRaster(){
+        buildRaster(DEFAULT_RASTER_CELL_SIZE, DEFAULT_RASTER_MAX_BYTES);
+    }
+
+    /**
+     * Builds a raster of the confinement area, which pointInZones and pointTooCloseToZones consult before the exact
+     * geometry. getZones must have been called first.
      *
-     * @param from the start point of the line
-     * @param to the end point of the line
-     * @return true if the line intersects any of the no-fly-zones, false otherwise.
+     * The results of queries are the same with or without the raster.
+     *
+     * @param cellSize the requested width and height of each cell of the raster in degrees
+     * @param maxBytes the most memory the raster may take; the cells are made larger if needed to fit
      */
-    public boolean lineIntersectsZones(LongLat from, LongLat to){
-        Line2D line = new Line2D.Double(from.lng, from.lat, to.lng, to.lat);
-        for(Polygon zone : zones){
-            if(lineIntersectsPolygon(line, zone)){
-                return true;
-            }
-        }return false;
+    public void buildRaster(double cellSize, long maxBytes){
+        this.raster = new ClearanceRaster(this.geometry, CLEARANCE, cellSize, maxBytes);
+    }
+
+    /**
+     * Discards the raster, so that all queries use the exact geometry.
+     */
+    public void clearRaster(){
+        this.raster = null;
     }
 
     /**
-     * Checks if a line intersects a Polygon.
+     * Gets the raster of the confinement area.
      *
-     * @param line the line which may or may not intersect the Polygon
-     * @param p the Polygon with which intersection between the line is being checked.
-     * @return true if the line intersects the Polygon, false otherwise.
+     * @return the raster, or null if it has not been built
      */
-    private boolean lineIntersectsPolygon(Line2D line, Polygon p){
-        List<List<Point>> edges = p.coordinates();
-        for(List<Point> edge : edges){
-            if(lineIntersectsEdge(line, edge)){
-                return true;
-            }
-        }return false;
+    public ClearanceRaster getRaster(){
+        return raster;
     }
 
     /**
-     * Checks if a line intersects an edge of a Polygon.
+     * Sets whether queries use the spatial index built over the zones, or scan every zone.
      *
-     * @param line the line which may or may not intersect the edge of the Polygon
-     * @param edge the edge of a Polygon with which intersection between the line is being checked.
-     * @return true if the line intersects the edge, false otherwise.
+     * Both give the same results, scanning is kept to allow the 2 to be compared.
+     *
+     * @param indexed true if the spatial index is to be used, false if every zone is to be scanned
      */
-    private boolean lineIntersectsEdge(Line2D line, List<Point> edge){
-        ArrayList<Line2D> edgeLines = getEdgeLines(edge);
-        for(Line2D edgeLine : edgeLines){
-            if(lineIntersectsEdgeLine(line, edgeLine)){
-                return true;
-            }
-        }return false;
+    public void setIndexed(boolean indexed){
+        this.indexed = indexed;
+        this.geometry.setIndexed(indexed);
+    }
 
+    /**
+     * Feeds the compiled no-fly-zones, and the clearance kept from them, into a message digest, so that anything
+     * derived from them can be recognised as stale once they change. getZones must have been called first.
+     *
+     * @param digest the digest to be updated
+     */
+    public void updateDigest(MessageDigest digest){
+        digest.update(Double.toString(CLEARANCE).getBytes());
+        this.geometry.updateDigest(digest);
     }
 
     /**
-     * Checks if a line intersects a line making up an edge of a Polygon.
+     * Checks if a line between 2 What3WordsLoc.LongLat points goes through any of the no-
+     * fly-zones.
      *
-     * @param line the line which may or may not intersect the edge line
-     * @param edgeLine the line of an edge of a Polygon with which intersection between the line is being checked.
-     * @return true if the line intersects the edge line, false otherwise.
+     * @param from the start point of the line
+     * @param to the end point of the line
+     * @return true if the line intersects any of the no-fly-zones, false otherwise.
      */
-    private boolean lineIntersectsEdgeLine(Line2D line, Line2D edgeLine){
-        return line.intersectsLine(edgeLine);
+    public boolean lineIntersectsZones(LongLat from, LongLat to){
+        return lineIntersectsZones(from.lng, from.lat, to.lng, to.lat);
     }
 
     /**
-     * Gets all the lines making up an edge of a Polygon.
+     * Checks if a line between 2 points, given as longitude and latitude components, goes through any of
+     * the no-fly-zones.
      *
-     * @param edge the edge whose lines are to be returned
-     * @return the lines making up the edge
+     * @param fromLng the longitude of the start point of the line
+     * @param fromLat the latitude of the start point of the line
+     * @param toLng the longitude of the end point of the line
+     * @param toLat the latitude of the end point of the line
+     * @return true if the line intersects any of the no-fly-zones, false otherwise.
      */
-    private ArrayList<Line2D> getEdgeLines(List<Point> edge){
-        ArrayList<Line2D> edgeLines = new ArrayList<Line2D>();
-        for(int i = 0; i < edge.size()-1; i++){
-            List<Double> startCoords = edge.get(i).coordinates();
-            List<Double> endCoords = edge.get(i+1).coordinates();
-            Line2D edgeLine = new Line2D.Double(
-                    startCoords.get(LNG_IND), startCoords.get(LAT_IND),
-                    endCoords.get(LNG_IND), endCoords.get(LAT_IND));
-            edgeLines.add(edgeLine);
-        }
-        return edgeLines;
+    public boolean lineIntersectsZones(double fromLng, double fromLat, double toLng, double toLat){
+        return geometry.lineIntersects(fromLng, fromLat, toLng, toLat);
     }
 
     /**
@@ -136,12 +163,22 @@ public class NoFlyZones {
      * @return true if loc lies in any of the no-fly-zones stored, false otherwise
      */
     public boolean pointInZones(LongLat point){
-        for(Polygon zone : this.zones){
-            if(pointInPolygon(point, zone)){
-                return true;
-            }
+        return pointInZones(point.lng, point.lat);
+    }
+
+    /**
+     * Checks if a point, given as longitude and latitude components, lies in any of the no-fly-zones.
+     *
+     * @param lng the longitude of the point to be checked
+     * @param lat the latitude of the point to be checked
+     * @return true if the point lies in any of the no-fly-zones stored, false otherwise
+     */
+    public boolean pointInZones(double lng, double lat){
+        int known = (raster == null) ? -1 : raster.lookUpInside(lng, lat);
+        if(known >= 0){
+            return known == 1;
         }
-        return false;
+        return geometry.containsPoint(lng, lat);
     }
 
     /**
@@ -153,22 +190,79 @@ public class NoFlyZones {
      * @return true if it is 'too close', false otherwise
      */
     public boolean pointTooCloseToZones(LongLat point){
-        Polygon pointCircleApproximation = TurfTransformation.circle(Point.fromLngLat(point.lng, point.lat), LongLat.MOVE_DISTANCE/2, 16, "degrees");
-        for(Point p : pointCircleApproximation.coordinates().get(0)){
-            if(pointInZones(new LongLat(p.longitude(), p.latitude()))){
-                return true;
-            }
-        }return false;
+        return pointTooCloseToZones(point.lng, point.lat);
     }
 
     /**
-     * Checks if a What3Words.LongLat point lies in a particular no-fly-zone
-     * @param point the point to be checked
-     * @param zone the no-fly-zone in which loc may or may not lie
-     * @return true if loc is inside zone, false otherwise
+     * Checks if a point, given as longitude and latitude components, is 'too close' to the no-fly-zones.
+     *
+     * The point is too close if it lies inside a zone, or if the Pythagorean distance from it to the nearest
+     * edge of any zone is less than CLEARANCE.
+     *
+     * @param lng the longitude of the point being examined
+     * @param lat the latitude of the point being examined
+     * @return true if it is 'too close', false otherwise
+     */
+    public boolean pointTooCloseToZones(double lng, double lat){
+        int known = (raster == null) ? -1 : raster.lookUpTooClose(lng, lat);
+        if(known >= 0){
+            return known == 1;
+        }
+        return geometry.pointWithinDistance(lng, lat, CLEARANCE);
+    }
+
+    /**
+     * Checks if a corridor around the line between 2 points is clear of the no-fly-zones.
+     *
+     * The corridor holds every point within deviation of the line. If it is clear, any path of moves which never
+     * strays further than deviation from the line neither crosses a zone nor comes 'too close' to one, so its moves
+     * need not be checked one by one.
+     *
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param deviation the furthest distance in degrees a path may stray from the line
+     * @return true if every point of the corridor is at least CLEARANCE from the zones, false otherwise
+     */
+    public boolean corridorClear(double fromLng, double fromLat, double toLng, double toLat, double deviation){
+        return !geometry.lineWithinDistance(fromLng, fromLat, toLng, toLat, CLEARANCE + deviation + CORRIDOR_MARGIN);
+    }
+
+    /**
+     * Sweeps the corridor around the line between 2 points against the no-fly-zones, sorting the straight path
+     * between them into a PathClass before any move is made.
+     *
+     * The path is CLEAR if corridorClear is true of the corridor. It is BLOCKED if not, and a point a move along the
+     * line to either side of where it crosses a zone edge lies inside a zone, which a path flown along the line will
+     * most likely run into. Otherwise it is AMBIGUOUS.
+     *
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param deviation the furthest distance in degrees a path may stray from the line
+     * @param blockingFraction an array whose first entry is set, for a BLOCKED path, to the fraction of the way along
+     *                         the line at which it lies inside a zone
+     * @return the class of the path
      */
-    private static boolean pointInPolygon(LongLat point, Polygon zone){
-        Point p = Point.fromLngLat(point.lng, point.lat);
-        return TurfJoins.inside(p, zone);
+    public PathClass classifyCorridor(double fromLng, double fromLat, double toLng, double toLat, double deviation,
+                                      double[] blockingFraction){
+        if(!geometry.sweepLine(fromLng, fromLat, toLng, toLat, CLEARANCE + deviation + CORRIDOR_MARGIN, blockingFraction)){
+            return PathClass.CLEAR;
+        }
+        double crossing = blockingFraction[0];
+        if(crossing < 0){
+            return PathClass.AMBIGUOUS;
+        }
+        double offset = LongLat.MOVE_DISTANCE / Math.hypot(toLng - fromLng, toLat - fromLat);
+        for(double fraction : new double[]{crossing + offset, crossing - offset}){
+            if(fraction > 0 && fraction < 1
+                    && pointInZones(fromLng + fraction * (toLng - fromLng), fromLat + fraction * (toLat - fromLat))){
+                blockingFraction[0] = fraction;
+                return PathClass.BLOCKED;
+            }
+        }
+        return PathClass.AMBIGUOUS;
     }
 }
@@ -0,0 +1,216 @@
+package uk.ac.ed.inf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the straight paths a Drone flies between pairs of points, so that a path which has already been
+ * flown, such as a sub-path tried for a delivery that was then found not to fit the battery, is not simulated again.
+ *
+ * The graph's edges are not put into the cache. They are only counted, from the exact coordinates of each address,
+ * while the drone flies from wherever its last hop ended, close to but not at an address; so none of its paths would
+ * be found among them.
+ *
+ * Entries are keyed on the exact coordinates of both ends, as a path depends on the last bit of its start; 2 points
+ * differing only by rounding, such as the drone's position and the address it is close to, have different paths and
+ * so different entries. An entry holds the points along the path. Only pairs between which a legal, straight path
+ * exists are kept.
+ *
+ * The cache may be used from several threads. Paths are simulated outside its lock, so 2 threads may simulate the
+ * same path at once; both get the same result.
+ */
+public class PathCache {
+    /** The default most entries the cache holds */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 17;
+
+    /** The cached paths, in the order set by the EvictionPolicy, the next to be dropped first */
+    private final LinkedHashMap<Key, FlightPath> entries;
+    /** The number of lookups answered from the cache */
+    private long hits = 0;
+    /** The number of lookups for which a path had to be simulated */
+    private long misses = 0;
+    /** The number of entries dropped to make room for others */
+    private long evictions = 0;
+
+    /**
+     * The exact coordinates of the ends of a path.
+     */
+    private static final class Key {
+        /** The longitude of the start of the path */
+        private final double fromLng;
+        /** The latitude of the start of the path */
+        private final double fromLat;
+        /** The longitude of the end of the path */
+        private final double toLng;
+        /** The latitude of the end of the path */
+        private final double toLat;
+
+        /**
+         * Constructor to key the path between 2 points.
+         *
+         * @param from the start of the path
+         * @param to the end of the path
+         */
+        private Key(LongLat from, LongLat to){
+            this.fromLng = from.lng;
+            this.fromLat = from.lat;
+            this.toLng = to.lng;
+            this.toLat = to.lat;
+        }
+
+        /**
+         * Checks if another object is a Key with the same coordinates, bit for bit.
+         *
+         * @param o the object to be compared
+         * @return true if o is an equal Key, false otherwise
+         */
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Key)){
+                return false;
+            }
+            Key key = (Key) o;
+            return Double.compare(fromLng, key.fromLng) == 0 && Double.compare(fromLat, key.fromLat) == 0
+                    && Double.compare(toLng, key.toLng) == 0 && Double.compare(toLat, key.toLat) == 0;
+        }
+
+        /**
+         * Gets a hash code of the coordinates, consistent with equals.
+         *
+         * @return the hash code
+         */
+        @Override
+        public int hashCode(){
+            int hash = Double.hashCode(fromLng);
+            hash = 31 * hash + Double.hashCode(fromLat);
+            hash = 31 * hash + Double.hashCode(toLng);
+            return 31 * hash + Double.hashCode(toLat);
+        }
+    }
+
+    /**
+     * Constructor to instantiate a new, empty PathCache holding up to DEFAULT_MAX_ENTRIES least recently used paths.
+     */
+    public PathCache(){
+        this(DEFAULT_MAX_ENTRIES, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Constructor to instantiate a new, empty PathCache.
+     *
+     * @param maxEntries the most paths the cache holds, which must be at least 1
+     * @param policy the order in which paths are dropped once the cache is full
+     */
+    public PathCache(int maxEntries, EvictionPolicy policy){
+        if(maxEntries < 1){
+            System.err.println(String.format("Fatal error in PathCache: maxEntries must be at least 1, not %d.", maxEntries));
+            System.exit(1);
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, policy == EvictionPolicy.LRU){
+            /**
+             * Drops the next entry in order once there are too many, counting it.
+             *
+             * @param eldest the next entry to be dropped
+             * @return true if there are more entries than the cache may hold
+             */
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FlightPath> eldest){
+                if(size() > maxEntries){
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Adds the path between 2 points to the end of a FlightPath, as LongLat.addPathTo does, from the cache if it holds
+     * the points of the path.
+     *
+     * @param from the start of the path
+     * @param to the end of the path
+     * @param zones a NoFlyZones object whose zones field contains details of all no-fly-zones
+     *              stored on the web server
+     * @param pointsOnPath the FlightPath to which the points along the path are added, starting with from. It is left
+     *                     as it was if no legal, straight path exists.
+     * @return true if a legal, straight path between the points exists, false otherwise
+     */
+    public boolean addPathTo(LongLat from, LongLat to, NoFlyZones zones, FlightPath pointsOnPath){
+        Key key = new Key(from, to);
+        FlightPath cached = lookUp(key);
+        if(cached != null){
+            pointsOnPath.addAll(cached);
+            return true;
+        }
+        FlightPath points = new FlightPath();
+        if(!(from.addPathTo(to, zones, points))){
+            return false;
+        }
+        store(key, points);
+        pointsOnPath.addAll(points);
+        return true;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups for which a path had to be simulated.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    /**
+     * Gets the number of entries dropped to make room for others.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+
+    /**
+     * Gets the number of paths the cache holds.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * Looks up the points of a path, counting the hit or miss.
+     *
+     * @param key the ends of the path
+     * @return the points along the path, or null if it is not cached
+     */
+    private synchronized FlightPath lookUp(Key key){
+        FlightPath points = entries.get(key);
+        if(points != null){
+            hits++;
+        }else{
+            misses++;
+        }
+        return points;
+    }
+
+    /**
+     * Adds or replaces the entry of a path.
+     *
+     * @param key the ends of the path
+     * @param points the points along the path
+     */
+    private synchronized void store(Key key, FlightPath points){
+        entries.put(key, points);
+    }
+}
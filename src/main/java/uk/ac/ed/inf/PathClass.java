@@ -0,0 +1,14 @@
+package uk.ac.ed.inf;
+
+/**
+ * The classes into which LongLat.countMovesTo sorts the straight paths between pairs of points, by sweeping the
+ * corridor around the line between them against the no-fly-zones before any move is made.
+ */
+public enum PathClass {
+    /** The corridor is clear of the zones, so the path is stepped without checking any move against them */
+    CLEAR,
+    /** The line passes through a zone, so the path is stepped without zone checks to there, and checked only there */
+    BLOCKED,
+    /** Neither, so the path is flown with every move checked against the zones */
+    AMBIGUOUS
+}
@@ -0,0 +1,261 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * Finds the order in which the drone should visit the shops of an order, so that the path from its start through
+ * every shop to the delivery location is as short as possible.
+ *
+ * Only the lengths of the shortest paths between the stops are used, held in a distance matrix whose first row and
+ * column are the start, whose last are the delivery location, and whose others are the shops. With up to
+ * MAX_EXACT_PICKUPS shops the best order is found exactly with the Held-Karp dynamic programme, in time
+ * O(2^k * k^2) for k shops. With more, an order is built by always visiting the nearest shop not yet visited next,
+ * then improved by moving single shops and reversing runs of shops while either shortens it.
+ */
+public class PickupRouting {
+    /** The most shops whose best order is found exactly */
+    public static final int MAX_EXACT_PICKUPS = 15;
+
+    /** Default constructor to prevent instantiation */
+    private PickupRouting(){}
+
+    /**
+     * Finds the stops of the shortest path from a start vertex through every pickup vertex to an end vertex.
+     *
+     * @param start the ID of the vertex at the start of the path
+     * @param pickups the IDs of the vertices which must be visited, in any order
+     * @param end the ID of the vertex at the end of the path
+     * @param paths the shortest paths between the vertices
+     * @return the IDs of the vertices the path must visit, in order, starting with start and ending with end
+     */
+    public static int[] findStops(int start, int[] pickups, int end, ShortestPaths paths){
+        int numStops = pickups.length + 2;
+        int[] vertices = new int[numStops];
+        vertices[0] = start;
+        System.arraycopy(pickups, 0, vertices, 1, pickups.length);
+        vertices[numStops - 1] = end;
+        int[][] dist = new int[numStops][numStops];
+        for(int i = 0; i < numStops; i++){
+            for(int j = 0; j < numStops; j++){
+                dist[i][j] = (i == j) ? 0 : paths.getDistance(vertices[i], vertices[j]);
+            }
+        }
+
+        int[] order = findOrder(dist);
+        int[] stops = new int[numStops];
+        stops[0] = start;
+        for(int i = 0; i < order.length; i++){
+            stops[i+1] = vertices[order[i]];
+        }
+        stops[numStops - 1] = end;
+        return stops;
+    }
+
+    /**
+     * Finds the order in which to visit the pickups of a distance matrix, exactly if there are at most
+     * MAX_EXACT_PICKUPS of them.
+     *
+     * @param dist the distance matrix, with the start first, the end last and the pickups between
+     * @return the indices in dist of the pickups, in the order they are to be visited
+     */
+    public static int[] findOrder(int[][] dist){
+        return (dist.length - 2 <= MAX_EXACT_PICKUPS) ? findExactOrder(dist) : findHeuristicOrder(dist);
+    }
+
+    /**
+     * Finds the order in which to visit the pickups of a distance matrix that gives the shortest path, with the
+     * Held-Karp dynamic programme.
+     *
+     * best[mask][last] is the length of the shortest path from the start through the pickups in mask, ending at
+     * last. Ties are broken towards the order in which the pickups are given, so that with 2 pickups they are
+     * swapped only if that is strictly shorter.
+     *
+     * @param dist the distance matrix, with the start first, the end last and the pickups between
+     * @return the indices in dist of the pickups, in the order they are to be visited
+     */
+    public static int[] findExactOrder(int[][] dist){
+        int numPickups = dist.length - 2;
+        int end = numPickups + 1;
+        if(numPickups == 0){
+            return new int[0];
+        }
+        if(numPickups > MAX_EXACT_PICKUPS){
+            System.err.println(String.format("Fatal error in PickupRouting.findExactOrder: at most %d pickups can be ordered exactly, not %d.", MAX_EXACT_PICKUPS, numPickups));
+            System.exit(1);
+            return null;
+        }
+
+        // Pickup i is bit i of a mask and index i+1 of dist.
+        int numMasks = 1 << numPickups;
+        int[] best = new int[numMasks * numPickups];
+        byte[] previous = new byte[numMasks * numPickups];
+        Arrays.fill(best, ShortestPaths.NO_PATH);
+        for(int i = 0; i < numPickups; i++){
+            best[(1 << i) * numPickups + i] = dist[0][i+1];
+        }
+        for(int mask = 1; mask < numMasks; mask++){
+            for(int last = 0; last < numPickups; last++){
+                int length = best[mask * numPickups + last];
+                if((mask & (1 << last)) == 0 || length >= ShortestPaths.NO_PATH){
+                    continue;
+                }
+                for(int next = 0; next < numPickups; next++){
+                    if((mask & (1 << next)) != 0){
+                        continue;
+                    }
+                    int through = add(length, dist[last+1][next+1]);
+                    int i = (mask | (1 << next)) * numPickups + next;
+                    if(through < best[i]){
+                        best[i] = through;
+                        previous[i] = (byte) last;
+                    }
+                }
+            }
+        }
+
+        // The later the last pickup, the nearer the order is to the one given, so it wins ties.
+        int full = numMasks - 1;
+        int bestLast = numPickups - 1;
+        int bestLength = add(best[full * numPickups + bestLast], dist[bestLast+1][end]);
+        for(int last = numPickups - 2; last >= 0; last--){
+            int length = add(best[full * numPickups + last], dist[last+1][end]);
+            if(length < bestLength){
+                bestLength = length;
+                bestLast = last;
+            }
+        }
+
+        int[] order = new int[numPickups];
+        int mask = full;
+        int last = bestLast;
+        for(int i = numPickups - 1; i >= 0; i--){
+            order[i] = last + 1;
+            int before = previous[mask * numPickups + last];
+            mask &= ~(1 << last);
+            last = before;
+        }
+        return order;
+    }
+
+    /**
+     * Finds an order in which to visit the pickups of a distance matrix that gives a short, though not always the
+     * shortest, path.
+     *
+     * The order starts as the nearest neighbour tour from the start. Moving a single pickup elsewhere in the order,
+     * then reversing a run of pickups, is tried for every pickup and run in turn, keeping any change that shortens
+     * the path, until none does.
+     *
+     * @param dist the distance matrix, with the start first, the end last and the pickups between
+     * @return the indices in dist of the pickups, in the order they are to be visited
+     */
+    public static int[] findHeuristicOrder(int[][] dist){
+        int numPickups = dist.length - 2;
+        int[] order = new int[numPickups];
+        boolean[] visited = new boolean[numPickups + 2];
+        int curr = 0;
+        for(int i = 0; i < numPickups; i++){
+            int nearest = -1;
+            for(int next = 1; next <= numPickups; next++){
+                if(!visited[next] && (nearest == -1 || dist[curr][next] < dist[curr][nearest])){
+                    nearest = next;
+                }
+            }
+            order[i] = nearest;
+            visited[nearest] = true;
+            curr = nearest;
+        }
+
+        int length = getLength(dist, order);
+        int[] candidate = new int[numPickups];
+        boolean improved = true;
+        while(improved){
+            improved = false;
+            // Move the pickup at from to to.
+            for(int from = 0; from < numPickups; from++){
+                for(int to = 0; to < numPickups; to++){
+                    if(from == to){
+                        continue;
+                    }
+                    relocate(order, from, to, candidate);
+                    int candidateLength = getLength(dist, candidate);
+                    if(candidateLength < length){
+                        System.arraycopy(candidate, 0, order, 0, numPickups);
+                        length = candidateLength;
+                        improved = true;
+                    }
+                }
+            }
+            // Reverse the pickups from first to last.
+            for(int first = 0; first < numPickups - 1; first++){
+                for(int last = first + 1; last < numPickups; last++){
+                    System.arraycopy(order, 0, candidate, 0, numPickups);
+                    for(int i = first, j = last; i < j; i++, j--){
+                        int pickup = candidate[i];
+                        candidate[i] = candidate[j];
+                        candidate[j] = pickup;
+                    }
+                    int candidateLength = getLength(dist, candidate);
+                    if(candidateLength < length){
+                        System.arraycopy(candidate, 0, order, 0, numPickups);
+                        length = candidateLength;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Gets the length of the path from the start through the pickups of a distance matrix in a given order to the end.
+     *
+     * @param dist the distance matrix, with the start first, the end last and the pickups between
+     * @param order the indices in dist of the pickups, in the order they are visited
+     * @return the length of the path, or ShortestPaths.NO_PATH if any part of it has no path
+     */
+    public static int getLength(int[][] dist, int[] order){
+        int length = 0;
+        int curr = 0;
+        for(int next : order){
+            length = add(length, dist[curr][next]);
+            curr = next;
+        }
+        return add(length, dist[curr][dist.length - 1]);
+    }
+
+    /**
+     * Writes an order with one pickup moved into another array.
+     *
+     * @param order the order
+     * @param from the index in order of the pickup to be moved
+     * @param to the index the pickup is to have once moved
+     * @param moved the array into which the order with the pickup moved is written
+     */
+    private static void relocate(int[] order, int from, int to, int[] moved){
+        int pickup = order[from];
+        int j = 0;
+        for(int i = 0; i < order.length; i++){
+            if(i == from){
+                continue;
+            }
+            if(j == to){
+                moved[j++] = pickup;
+            }
+            moved[j++] = order[i];
+        }
+        if(j == to){
+            moved[j] = pickup;
+        }
+    }
+
+    /**
+     * Adds 2 path lengths, giving ShortestPaths.NO_PATH if either is.
+     *
+     * @param a the first length, at most ShortestPaths.NO_PATH
+     * @param b the second length, at most ShortestPaths.NO_PATH
+     * @return the sum of the lengths, at most ShortestPaths.NO_PATH
+     */
+    private static int add(int a, int b){
+        return Math.min(ShortestPaths.NO_PATH, a + b);
+    }
+}
@@ -0,0 +1,11 @@
+package uk.ac.ed.inf;
+
+/**
+ * The ways in which a LocationGraph can find the shortest paths through itself.
+ */
+public enum ShortestPathMode {
+    /** Find the paths between every pair of vertices up front with FloydWarshall; O(V^3) time and O(V^2) memory */
+    ALL_PAIRS,
+    /** Find the paths from each vertex when first asked with DijkstraShortestPaths, keeping the most recent in memory */
+    ON_DEMAND
+}
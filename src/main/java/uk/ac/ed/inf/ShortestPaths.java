@@ -0,0 +1,36 @@
+package uk.ac.ed.inf;
+
+/**
+ * The shortest paths through a directed graph with integer weights, whose vertices are dense integer IDs.
+ */
+public interface ShortestPaths {
+    /** The distance given between vertices with no path between them; the sum of 2 of these does not overflow */
+    int NO_PATH = Integer.MAX_VALUE / 2;
+
+    /**
+     * Gets the number of vertices in the graph.
+     *
+     * @return the number of vertices
+     */
+    int getNumVertices();
+
+    /**
+     * Gets the length of the shortest path between 2 vertices.
+     *
+     * @param from the vertex at the start of the path
+     * @param to the vertex at the end of the path
+     * @return the sum of the weights of the edges along the path, or NO_PATH if there is none
+     */
+    int getDistance(int from, int to);
+
+    /**
+     * Writes the vertices along the shortest path between 2 vertices into an array.
+     *
+     * @param from the vertex at the start of the path
+     * @param to the vertex at the end of the path
+     * @param path the array into which the vertices are written, in order, starting with from and ending with to.
+     *             It must be at least as long as the number of vertices in the graph.
+     * @return the number of vertices written, or 0 if there is no path
+     */
+    int getPath(int from, int to, int[] path);
+}
@@ -0,0 +1,882 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Line2D;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * The no-fly-zones compiled into flat arrays of primitives.
+ *
+ * The geojson.Polygon objects read from the web server store every coordinate as a boxed List<Double>,
+ * which is expensive to walk for every move the drone simulates. This class copies the coordinates of every
+ * ring of every polygon into primitive arrays once, along with the bounding box of every polygon and every
+ * edge line, so that the queries made by NoFlyZones run without allocating any objects.
+ *
+ * Boxes and edge lines are stored 4 doubles at a time, in the orders given by the offset constants below.
+ *
+ * A uniform grid is laid over the bounding box of all the polygons, with each cell listing the edge lines and
+ * polygons whose bounding boxes overlap it. Queries then only test the lines and polygons listed in the cells
+ * their own bounding box overlaps. The grid can be switched off with setIndexed, in which case every polygon is
+ * scanned, so that the 2 approaches can be compared.
+ */
+public class ZoneGeometry {
+    /** The number of doubles used to store a single box or edge line */
+    private static final int STRIDE = 4;
+    /** Offset of the minimum longitude of a box */
+    private static final int MIN_LNG = 0;
+    /** Offset of the minimum latitude of a box */
+    private static final int MIN_LAT = 1;
+    /** Offset of the maximum longitude of a box */
+    private static final int MAX_LNG = 2;
+    /** Offset of the maximum latitude of a box */
+    private static final int MAX_LAT = 3;
+    /** Offset of the longitude of the start of an edge line */
+    private static final int START_LNG = 0;
+    /** Offset of the latitude of the start of an edge line */
+    private static final int START_LAT = 1;
+    /** Offset of the longitude of the end of an edge line */
+    private static final int END_LNG = 2;
+    /** Offset of the latitude of the end of an edge line */
+    private static final int END_LAT = 3;
+    /** The average number of edge lines the grid is sized to hold per cell */
+    private static final int LINES_PER_CELL = 2;
+    /** The largest number of cells the grid may have along either axis */
+    private static final int MAX_CELLS_PER_AXIS = 512;
+    /** Extra width in degrees given to the cells a line is looked for in, to allow for rounding at their edges */
+    private static final double CELL_ROUNDING = 1e-9;
+
+    /** The longitude of every vertex of every ring, ring after ring */
+    private final double[] vertexLngs;
+    /** The latitude of every vertex of every ring, ring after ring */
+    private final double[] vertexLats;
+    /** The index of the first vertex of each ring, with one extra entry marking the end of the last ring */
+    private final int[] ringStarts;
+    /** The index of the outer ring of each polygon, with one extra entry marking the end of the last polygon */
+    private final int[] polygonRingStarts;
+    /** The index of the first edge line of each polygon, with one extra entry marking the end of the last polygon */
+    private final int[] polygonLineStarts;
+    /** The bounding box of each polygon */
+    private final double[] polygonBoxes;
+    /** The start and end points of every edge line of every polygon */
+    private final double[] lines;
+    /** The bounding box of every edge line */
+    private final double[] lineBoxes;
+
+    /** The bounding box of all the polygons, over which the grid is laid */
+    private final double[] gridBox = new double[STRIDE];
+    /** The number of columns (cells along the longitude axis) in the grid */
+    private int gridCols;
+    /** The number of rows (cells along the latitude axis) in the grid */
+    private int gridRows;
+    /** The number of columns per degree of longitude */
+    private double colsPerDegree;
+    /** The number of rows per degree of latitude */
+    private double rowsPerDegree;
+    /** The index in cellLines of the first line of each cell, with one extra entry marking the end of the last cell */
+    private int[] cellLineStarts;
+    /** The indices of the edge lines overlapping each cell, cell after cell */
+    private int[] cellLines;
+    /** The index in cellPolygons of the first polygon of each cell, with one extra entry marking the end of the last cell */
+    private int[] cellPolygonStarts;
+    /** The indices of the polygons overlapping each cell, cell after cell */
+    private int[] cellPolygons;
+    /** Whether queries use the grid, or scan every polygon */
+    private boolean indexed = true;
+
+    /**
+     * Constructor to compile a list of Polygons into a new ZoneGeometry instance.
+     *
+     * @param zones the polygons to be compiled, one for each no-fly-zone
+     */
+    public ZoneGeometry(List<Polygon> zones){
+        int numRings = 0;
+        int numVertices = 0;
+        int numLines = 0;
+        for(Polygon zone : zones){
+            for(List<Point> ring : zone.coordinates()){
+                numRings++;
+                numVertices += ring.size();
+                numLines += Math.max(ring.size() - 1, 0);
+            }
+        }
+
+        vertexLngs = new double[numVertices];
+        vertexLats = new double[numVertices];
+        ringStarts = new int[numRings + 1];
+        polygonRingStarts = new int[zones.size() + 1];
+        polygonLineStarts = new int[zones.size() + 1];
+        polygonBoxes = new double[zones.size() * STRIDE];
+        lines = new double[numLines * STRIDE];
+        lineBoxes = new double[numLines * STRIDE];
+
+        int ring = 0;
+        int vertex = 0;
+        int line = 0;
+        for(int p = 0; p < zones.size(); p++){
+            polygonRingStarts[p] = ring;
+            polygonLineStarts[p] = line;
+            emptyBox(polygonBoxes, p);
+            for(List<Point> ringPoints : zones.get(p).coordinates()){
+                ringStarts[ring++] = vertex;
+                for(int i = 0; i < ringPoints.size(); i++){
+                    Point point = ringPoints.get(i);
+                    vertexLngs[vertex] = point.longitude();
+                    vertexLats[vertex] = point.latitude();
+                    growBox(polygonBoxes, p, vertexLngs[vertex], vertexLats[vertex]);
+                    if(i > 0){
+                        addLine(line++, vertexLngs[vertex-1], vertexLats[vertex-1], vertexLngs[vertex], vertexLats[vertex]);
+                    }
+                    vertex++;
+                }
+            }
+        }
+        ringStarts[ring] = vertex;
+        polygonRingStarts[zones.size()] = ring;
+        polygonLineStarts[zones.size()] = line;
+        buildGrid();
+    }
+
+    /**
+     * Sets whether queries use the grid, or scan every polygon.
+     *
+     * Both give the same results; the scan exists to allow the speed of the 2 to be compared.
+     *
+     * @param indexed true if the grid is to be used, false if every polygon is to be scanned
+     */
+    public void setIndexed(boolean indexed){
+        this.indexed = indexed;
+    }
+
+    /**
+     * Checks if queries use the grid.
+     *
+     * @return true if queries use the grid, false if every polygon is scanned
+     */
+    public boolean isIndexed(){
+        return indexed;
+    }
+
+    /**
+     * Gets the number of polygons compiled into this instance.
+     *
+     * @return the number of polygons
+     */
+    public int getNumPolygons(){
+        return polygonRingStarts.length - 1;
+    }
+
+    /**
+     * Gets the number of edge lines compiled into this instance.
+     *
+     * @return the number of edge lines
+     */
+    public int getNumLines(){
+        return lines.length / STRIDE;
+    }
+
+    /**
+     * Feeds every coordinate of every ring of every polygon, and the rings and polygons they belong to, into a
+     * message digest. 2 instances feed the same bytes exactly when they were compiled from the same polygons.
+     *
+     * @param digest the digest to be updated
+     */
+    public void updateDigest(MessageDigest digest){
+        ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES * 2 * vertexLngs.length
+                + Integer.BYTES * (3 + ringStarts.length + polygonRingStarts.length));
+        buffer.putInt(vertexLngs.length).putInt(ringStarts.length).putInt(polygonRingStarts.length);
+        for(int v = 0; v < vertexLngs.length; v++){
+            buffer.putDouble(vertexLngs[v]).putDouble(vertexLats[v]);
+        }
+        for(int start : ringStarts){
+            buffer.putInt(start);
+        }
+        for(int start : polygonRingStarts){
+            buffer.putInt(start);
+        }
+        digest.update(buffer.array());
+    }
+
+    /**
+     * Checks if the line between 2 points intersects any edge line of any polygon.
+     *
+     * Uses the same test as java.awt.geom.Line2D.intersectsLine, so touching an edge counts as intersecting it.
+     *
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @return true if the line intersects any of the polygons' edges, false otherwise
+     */
+    public boolean lineIntersects(double fromLng, double fromLat, double toLng, double toLat){
+        double minLng = Math.min(fromLng, toLng);
+        double minLat = Math.min(fromLat, toLat);
+        double maxLng = Math.max(fromLng, toLng);
+        double maxLat = Math.max(fromLat, toLat);
+        if(!indexed){
+            for(int p = 0; p < getNumPolygons(); p++){
+                if(boxOverlaps(polygonBoxes, p, minLng, minLat, maxLng, maxLat)
+                        && lineIntersectsPolygon(p, fromLng, fromLat, toLng, toLat, minLng, minLat, maxLng, maxLat)){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if(!boxOverlaps(gridBox, 0, minLng, minLat, maxLng, maxLat)){
+            return false;
+        }
+        int minRow = rowOf(minLat);
+        int maxRow = rowOf(maxLat);
+        int minCol = colOf(minLng);
+        int maxCol = colOf(maxLng);
+        for(int row = minRow; row <= maxRow; row++){
+            for(int col = minCol; col <= maxCol; col++){
+                int cell = row * gridCols + col;
+                // A line spanning several cells may be tested more than once; this is cheaper than tracking which
+                // lines have been seen and keeps queries free of shared state.
+                for(int i = cellLineStarts[cell]; i < cellLineStarts[cell+1]; i++){
+                    int l = cellLines[i];
+                    if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat)
+                            && lineIntersectsLine(l, fromLng, fromLat, toLng, toLat)){
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a point lies inside any of the polygons.
+     *
+     * A point inside a hole of a polygon is not inside the polygon. The even-odd ray casting used matches
+     * that of com.mapbox.turf.TurfJoins.inside.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return true if the point lies inside any of the polygons, false otherwise
+     */
+    public boolean containsPoint(double lng, double lat){
+        if(!indexed){
+            for(int p = 0; p < getNumPolygons(); p++){
+                if(polygonContainsPoint(p, lng, lat)){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if(!boxContains(gridBox, 0, lng, lat)){
+            return false;
+        }
+        int cell = rowOf(lat) * gridCols + colOf(lng);
+        for(int i = cellPolygonStarts[cell]; i < cellPolygonStarts[cell+1]; i++){
+            if(polygonContainsPoint(cellPolygons[i], lng, lat)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a point lies inside any of the polygons, or closer than a given distance to any of their edges.
+     *
+     * Distances are Pythagorean distances in degrees, as in LongLat.distanceTo.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @param distance the distance from the polygons' edges within which the point must not be
+     * @return true if the point lies inside any polygon or is closer than distance to any of their edges, false
+     *         otherwise
+     */
+    public boolean pointWithinDistance(double lng, double lat, double distance){
+        double minLng = lng - distance;
+        double minLat = lat - distance;
+        double maxLng = lng + distance;
+        double maxLat = lat + distance;
+        double distanceSq = distance * distance;
+        if(!indexed){
+            for(int l = 0; l < getNumLines(); l++){
+                if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat) && lineDistanceSq(l, lng, lat) < distanceSq){
+                    return true;
+                }
+            }
+            return containsPoint(lng, lat);
+        }
+
+        if(!boxOverlaps(gridBox, 0, minLng, minLat, maxLng, maxLat)){
+            return false;
+        }
+        for(int row = rowOf(minLat); row <= rowOf(maxLat); row++){
+            for(int col = colOf(minLng); col <= colOf(maxLng); col++){
+                int cell = row * gridCols + col;
+                for(int i = cellLineStarts[cell]; i < cellLineStarts[cell+1]; i++){
+                    int l = cellLines[i];
+                    if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat) && lineDistanceSq(l, lng, lat) < distanceSq){
+                        return true;
+                    }
+                }
+            }
+        }
+        return containsPoint(lng, lat);
+    }
+
+    /**
+     * Checks if the line between 2 points passes through any of the polygons, or closer than a given distance to any
+     * of their edges.
+     *
+     * Distances are Pythagorean distances in degrees, as in LongLat.distanceTo. A line crossing no edge lies either
+     * wholly inside or wholly outside each polygon, so only its start need be checked for containment.
+     *
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param distance the distance from the polygons' edges within which no part of the line must be
+     * @return true if any part of the line lies inside any polygon or closer than distance to any of their edges,
+     *         false otherwise
+     */
+    public boolean lineWithinDistance(double fromLng, double fromLat, double toLng, double toLat, double distance){
+        double distanceSq = distance * distance;
+        if(anyLineNear(fromLng, fromLat, toLng, toLat, distance,
+                l -> lineNearLine(l, fromLng, fromLat, toLng, toLat, distanceSq))){
+            return true;
+        }
+        return containsPoint(fromLng, fromLat);
+    }
+
+    /**
+     * Sweeps the line between 2 points, widened by a given distance, against the polygons, finding both whether it
+     * is clear of them, as lineWithinDistance does, and a point at which the line crosses their edges.
+     *
+     * The sweep stops at the first edge line found near the line, as lineWithinDistance does, so a crossing is found
+     * only if that edge line crosses the line, and need not be the crossing nearest its start.
+     *
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param distance the distance from the polygons' edges within which no part of the line must be
+     * @param crossing an array whose first entry is set to the fraction of the way along the line at which it
+     *                 crosses the edge line found, or -1 if it does not cross it
+     * @return true if any part of the line lies inside any polygon or closer than distance to any of their edges,
+     *         false otherwise
+     */
+    public boolean sweepLine(double fromLng, double fromLat, double toLng, double toLat, double distance, double[] crossing){
+        double distanceSq = distance * distance;
+        crossing[0] = -1;
+        boolean[] near = {false};
+        anyLineNear(fromLng, fromLat, toLng, toLat, distance, l -> {
+            if(!lineNearLine(l, fromLng, fromLat, toLng, toLat, distanceSq)){
+                return false;
+            }
+            near[0] = true;
+            crossing[0] = crossingFraction(l, fromLng, fromLat, toLng, toLat);
+            return true;
+        });
+        return near[0] || containsPoint(fromLng, fromLat);
+    }
+
+    /**
+     * Tests edge lines near the line between 2 points until one passes a test.
+     *
+     * Every edge line within distance of the line is tested, along with others near it. With the grid, only the
+     * columns the widened line passes through in each row are visited, rather than its whole bounding box, which for
+     * a diagonal line would be most of the grid. An edge line spanning several cells may be tested more than once.
+     *
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param distance the distance from the line within which every edge line must be tested
+     * @param test the test, given the index of an edge line
+     * @return true if any edge line passed the test, false otherwise
+     */
+    private boolean anyLineNear(double fromLng, double fromLat, double toLng, double toLat, double distance, IntPredicate test){
+        double minLng = Math.min(fromLng, toLng) - distance;
+        double minLat = Math.min(fromLat, toLat) - distance;
+        double maxLng = Math.max(fromLng, toLng) + distance;
+        double maxLat = Math.max(fromLat, toLat) + distance;
+        if(!indexed){
+            for(int l = 0; l < getNumLines(); l++){
+                if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat) && test.test(l)){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if(!boxOverlaps(gridBox, 0, minLng, minLat, maxLng, maxLat)){
+            return false;
+        }
+        double dLng = toLng - fromLng;
+        double dLat = toLat - fromLat;
+        for(int row = rowOf(minLat); row <= rowOf(maxLat); row++){
+            double rowMinLat = (row == 0) ? Double.NEGATIVE_INFINITY
+                    : gridBox[MIN_LAT] + row / rowsPerDegree - distance - CELL_ROUNDING;
+            double rowMaxLat = (row == gridRows - 1) ? Double.POSITIVE_INFINITY
+                    : gridBox[MIN_LAT] + (row + 1) / rowsPerDegree + distance + CELL_ROUNDING;
+            // The fractions of the way along the line between which it is within distance of the row.
+            double enter = 0;
+            double leave = 1;
+            if(dLat != 0){
+                double atMin = (rowMinLat - fromLat) / dLat;
+                double atMax = (rowMaxLat - fromLat) / dLat;
+                enter = Math.max(0, Math.min(atMin, atMax));
+                leave = Math.min(1, Math.max(atMin, atMax));
+            } else if(fromLat < rowMinLat || fromLat > rowMaxLat){
+                continue;
+            }
+            if(enter > leave){
+                continue;
+            }
+            double enterLng = fromLng + enter * dLng;
+            double leaveLng = fromLng + leave * dLng;
+            int minCol = colOf(Math.min(enterLng, leaveLng) - distance - CELL_ROUNDING);
+            int maxCol = colOf(Math.max(enterLng, leaveLng) + distance + CELL_ROUNDING);
+            for(int col = minCol; col <= maxCol; col++){
+                int cell = row * gridCols + col;
+                for(int i = cellLineStarts[cell]; i < cellLineStarts[cell+1]; i++){
+                    int l = cellLines[i];
+                    if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat) && test.test(l)){
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the Pythagorean distance in degrees from a point to the nearest edge of any polygon, looking no further
+     * than a given distance.
+     *
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @param maxDistance the furthest distance from the point at which edges are looked for
+     * @return the distance to the nearest edge, or maxDistance if no edge is closer than that
+     */
+    public double distanceToEdges(double lng, double lat, double maxDistance){
+        double minLng = lng - maxDistance;
+        double minLat = lat - maxDistance;
+        double maxLng = lng + maxDistance;
+        double maxLat = lat + maxDistance;
+        double nearestSq = maxDistance * maxDistance;
+        if(!indexed){
+            for(int l = 0; l < getNumLines(); l++){
+                if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat)){
+                    nearestSq = Math.min(nearestSq, lineDistanceSq(l, lng, lat));
+                }
+            }
+            return Math.sqrt(nearestSq);
+        }
+
+        if(!boxOverlaps(gridBox, 0, minLng, minLat, maxLng, maxLat)){
+            return maxDistance;
+        }
+        for(int row = rowOf(minLat); row <= rowOf(maxLat); row++){
+            for(int col = colOf(minLng); col <= colOf(maxLng); col++){
+                int cell = row * gridCols + col;
+                for(int i = cellLineStarts[cell]; i < cellLineStarts[cell+1]; i++){
+                    int l = cellLines[i];
+                    if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat)){
+                        nearestSq = Math.min(nearestSq, lineDistanceSq(l, lng, lat));
+                    }
+                }
+            }
+        }
+        return Math.sqrt(nearestSq);
+    }
+
+    /**
+     * Checks if the line between 2 points intersects any edge line of a single polygon.
+     *
+     * @param p the index of the polygon
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param minLng the minimum longitude of the line's bounding box
+     * @param minLat the minimum latitude of the line's bounding box
+     * @param maxLng the maximum longitude of the line's bounding box
+     * @param maxLat the maximum latitude of the line's bounding box
+     * @return true if the line intersects any edge of the polygon, false otherwise
+     */
+    private boolean lineIntersectsPolygon(int p, double fromLng, double fromLat, double toLng, double toLat,
+                                          double minLng, double minLat, double maxLng, double maxLat){
+        for(int l = polygonLineStarts[p]; l < polygonLineStarts[p+1]; l++){
+            if(boxOverlaps(lineBoxes, l, minLng, minLat, maxLng, maxLat)
+                    && lineIntersectsLine(l, fromLng, fromLat, toLng, toLat)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the line between 2 points intersects a single edge line.
+     *
+     * @param l the index of the edge line
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @return true if the 2 lines intersect, false otherwise
+     */
+    private boolean lineIntersectsLine(int l, double fromLng, double fromLat, double toLng, double toLat){
+        int o = l * STRIDE;
+        return Line2D.linesIntersect(fromLng, fromLat, toLng, toLat,
+                lines[o + START_LNG], lines[o + START_LAT], lines[o + END_LNG], lines[o + END_LAT]);
+    }
+
+    /**
+     * Finds where the line between 2 points crosses a single edge line.
+     *
+     * @param l the index of the edge line
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @return the fraction of the way along the line at which it crosses the edge line, or -1 if it does not, or
+     *         if the lines are parallel
+     */
+    private double crossingFraction(int l, double fromLng, double fromLat, double toLng, double toLat){
+        int o = l * STRIDE;
+        double dLng = toLng - fromLng;
+        double dLat = toLat - fromLat;
+        double edgeLng = lines[o + END_LNG] - lines[o + START_LNG];
+        double edgeLat = lines[o + END_LAT] - lines[o + START_LAT];
+        double denominator = dLng * edgeLat - dLat * edgeLng;
+        if(denominator == 0){
+            return -1;
+        }
+        double offLng = lines[o + START_LNG] - fromLng;
+        double offLat = lines[o + START_LAT] - fromLat;
+        double fraction = (offLng * edgeLat - offLat * edgeLng) / denominator;
+        double edgeFraction = (offLng * dLat - offLat * dLng) / denominator;
+        return (fraction >= 0 && fraction <= 1 && edgeFraction >= 0 && edgeFraction <= 1) ? fraction : -1;
+    }
+
+    /**
+     * Checks if the line between 2 points intersects, or passes closer than a given distance to, a single edge line.
+     *
+     * Lines which do not intersect are closest at an end of one or the other, so only the 4 ends need be measured.
+     *
+     * @param l the index of the edge line
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @param distanceSq the square of the distance within which the lines must not pass
+     * @return true if the lines intersect or pass closer than the distance, false otherwise
+     */
+    private boolean lineNearLine(int l, double fromLng, double fromLat, double toLng, double toLat, double distanceSq){
+        int o = l * STRIDE;
+        // An edge line wholly to one side of the extended line, and further than the distance from it, can be
+        // neither. Each cross product is the distance of an end of the edge line from it, times its length.
+        double dLng = toLng - fromLng;
+        double dLat = toLat - fromLat;
+        double startSide = dLng * (lines[o + START_LAT] - fromLat) - dLat * (lines[o + START_LNG] - fromLng);
+        double endSide = dLng * (lines[o + END_LAT] - fromLat) - dLat * (lines[o + END_LNG] - fromLng);
+        double lengthSq = dLng * dLng + dLat * dLat;
+        if((startSide > 0) == (endSide > 0) && startSide * startSide > distanceSq * lengthSq
+                && endSide * endSide > distanceSq * lengthSq){
+            return false;
+        }
+        if(lineIntersectsLine(l, fromLng, fromLat, toLng, toLat)){
+            return true;
+        }
+        return lineDistanceSq(l, fromLng, fromLat) < distanceSq
+                || lineDistanceSq(l, toLng, toLat) < distanceSq
+                || segmentDistanceSq(fromLng, fromLat, toLng, toLat, lines[o + START_LNG], lines[o + START_LAT]) < distanceSq
+                || segmentDistanceSq(fromLng, fromLat, toLng, toLat, lines[o + END_LNG], lines[o + END_LAT]) < distanceSq;
+    }
+
+    /**
+     * Calculates the square of the shortest Pythagorean distance between a point and an edge line.
+     *
+     * @param l the index of the edge line
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return the square of the distance in degrees
+     */
+    private double lineDistanceSq(int l, double lng, double lat){
+        int o = l * STRIDE;
+        return segmentDistanceSq(lines[o + START_LNG], lines[o + START_LAT], lines[o + END_LNG], lines[o + END_LAT], lng, lat);
+    }
+
+    /**
+     * Calculates the square of the shortest Pythagorean distance between a point and the line between 2 points.
+     *
+     * @param startLng the longitude of the start of the line
+     * @param startLat the latitude of the start of the line
+     * @param endLng the longitude of the end of the line
+     * @param endLat the latitude of the end of the line
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return the square of the distance in degrees
+     */
+    public static double segmentDistanceSq(double startLng, double startLat, double endLng, double endLat, double lng, double lat){
+        double dLng = endLng - startLng;
+        double dLat = endLat - startLat;
+        double lengthSq = dLng * dLng + dLat * dLat;
+        // How far along the line the closest point lies, as a fraction of its length.
+        double t = (lengthSq > 0) ? ((lng - startLng) * dLng + (lat - startLat) * dLat) / lengthSq : 0;
+        t = Math.max(0, Math.min(1, t));
+        double offLng = startLng + t * dLng - lng;
+        double offLat = startLat + t * dLat - lat;
+        return offLng * offLng + offLat * offLat;
+    }
+
+    /**
+     * Checks if a point lies inside a single polygon, and not inside any of its holes.
+     *
+     * @param p the index of the polygon
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return true if the point lies inside the polygon, false otherwise
+     */
+    private boolean polygonContainsPoint(int p, double lng, double lat){
+        int outerRing = polygonRingStarts[p];
+        if(!boxContains(polygonBoxes, p, lng, lat) || !ringContainsPoint(outerRing, lng, lat)){
+            return false;
+        }
+        for(int hole = outerRing + 1; hole < polygonRingStarts[p+1]; hole++){
+            if(ringContainsPoint(hole, lng, lat)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a point lies inside a single ring using even-odd ray casting.
+     *
+     * @param r the index of the ring
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return true if the point lies inside the ring, false otherwise
+     */
+    private boolean ringContainsPoint(int r, double lng, double lat){
+        boolean inside = false;
+        int start = ringStarts[r];
+        int end = ringStarts[r+1];
+        for(int i = start, j = end - 1; i < end; j = i++){
+            double iLng = vertexLngs[i];
+            double iLat = vertexLats[i];
+            double jLng = vertexLngs[j];
+            double jLat = vertexLats[j];
+            boolean crosses = ((iLat > lat) != (jLat > lat))
+                    && (lng < (jLng - iLng) * (lat - iLat) / (jLat - iLat) + iLng);
+            if(crosses){
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Lays the grid over the bounding box of all the polygons and lists the lines and polygons overlapping each cell.
+     *
+     * The grid is sized so that cells hold LINES_PER_CELL lines on average, with the cells being as close to square
+     * as the bounding box allows.
+     */
+    private void buildGrid(){
+        emptyBox(gridBox, 0);
+        for(int p = 0; p < getNumPolygons(); p++){
+            int o = p * STRIDE;
+            growBox(gridBox, 0, polygonBoxes[o + MIN_LNG], polygonBoxes[o + MIN_LAT]);
+            growBox(gridBox, 0, polygonBoxes[o + MAX_LNG], polygonBoxes[o + MAX_LAT]);
+        }
+        if(getNumPolygons() == 0){
+            // An empty grid of one cell, which no query can overlap.
+            gridCols = 1;
+            gridRows = 1;
+            cellLineStarts = new int[2];
+            cellLines = new int[0];
+            cellPolygonStarts = new int[2];
+            cellPolygons = new int[0];
+            return;
+        }
+
+        double width = gridBox[MAX_LNG] - gridBox[MIN_LNG];
+        double height = gridBox[MAX_LAT] - gridBox[MIN_LAT];
+        double targetCells = Math.max(1.0, (double) getNumLines() / LINES_PER_CELL);
+        double cellSize = Math.sqrt((width * height) / targetCells);
+        gridCols = (cellSize > 0) ? clampCells(Math.ceil(width / cellSize)) : 1;
+        gridRows = (cellSize > 0) ? clampCells(Math.ceil(height / cellSize)) : 1;
+        colsPerDegree = (width > 0) ? gridCols / width : 0;
+        rowsPerDegree = (height > 0) ? gridRows / height : 0;
+
+        int numCells = gridCols * gridRows;
+        cellLineStarts = new int[numCells + 1];
+        cellLines = new int[countCellEntries(lineBoxes, getNumLines(), cellLineStarts)];
+        fillCellEntries(lineBoxes, getNumLines(), cellLineStarts, cellLines);
+        cellPolygonStarts = new int[numCells + 1];
+        cellPolygons = new int[countCellEntries(polygonBoxes, getNumPolygons(), cellPolygonStarts)];
+        fillCellEntries(polygonBoxes, getNumPolygons(), cellPolygonStarts, cellPolygons);
+    }
+
+    /**
+     * Counts how many boxes overlap each cell of the grid, turning cellStarts into the index of the first entry of
+     * each cell.
+     *
+     * @param boxes the boxes to be placed in the grid
+     * @param numBoxes the number of boxes
+     * @param cellStarts an array of one more than the number of cells, to be filled with the start of each cell
+     * @return the total number of entries over all cells
+     */
+    private int countCellEntries(double[] boxes, int numBoxes, int[] cellStarts){
+        for(int b = 0; b < numBoxes; b++){
+            int o = b * STRIDE;
+            for(int row = rowOf(boxes[o + MIN_LAT]); row <= rowOf(boxes[o + MAX_LAT]); row++){
+                for(int col = colOf(boxes[o + MIN_LNG]); col <= colOf(boxes[o + MAX_LNG]); col++){
+                    cellStarts[row * gridCols + col + 1]++;
+                }
+            }
+        }
+        for(int cell = 0; cell < cellStarts.length - 1; cell++){
+            cellStarts[cell+1] += cellStarts[cell];
+        }
+        return cellStarts[cellStarts.length - 1];
+    }
+
+    /**
+     * Lists the index of each box in every cell of the grid it overlaps.
+     *
+     * @param boxes the boxes to be placed in the grid
+     * @param numBoxes the number of boxes
+     * @param cellStarts the start of each cell's entries, as found by countCellEntries
+     * @param cellEntries the array to be filled with the entries of each cell
+     */
+    private void fillCellEntries(double[] boxes, int numBoxes, int[] cellStarts, int[] cellEntries){
+        int[] nextEntry = new int[cellStarts.length - 1];
+        System.arraycopy(cellStarts, 0, nextEntry, 0, nextEntry.length);
+        for(int b = 0; b < numBoxes; b++){
+            int o = b * STRIDE;
+            for(int row = rowOf(boxes[o + MIN_LAT]); row <= rowOf(boxes[o + MAX_LAT]); row++){
+                for(int col = colOf(boxes[o + MIN_LNG]); col <= colOf(boxes[o + MAX_LNG]); col++){
+                    cellEntries[nextEntry[row * gridCols + col]++] = b;
+                }
+            }
+        }
+    }
+
+    /**
+     * Clamps a number of cells along an axis of the grid to the range [1, MAX_CELLS_PER_AXIS].
+     *
+     * @param cells the number of cells to be clamped
+     * @return the clamped number of cells
+     */
+    private static int clampCells(double cells){
+        return (int) Math.max(1, Math.min(MAX_CELLS_PER_AXIS, cells));
+    }
+
+    /**
+     * Gets the column of the grid containing a longitude, clamped to the grid.
+     *
+     * @param lng the longitude
+     * @return the index of the column
+     */
+    private int colOf(double lng){
+        int col = (int) ((lng - gridBox[MIN_LNG]) * colsPerDegree);
+        return Math.max(0, Math.min(gridCols - 1, col));
+    }
+
+    /**
+     * Gets the row of the grid containing a latitude, clamped to the grid.
+     *
+     * @param lat the latitude
+     * @return the index of the row
+     */
+    private int rowOf(double lat){
+        int row = (int) ((lat - gridBox[MIN_LAT]) * rowsPerDegree);
+        return Math.max(0, Math.min(gridRows - 1, row));
+    }
+
+    /**
+     * Stores an edge line and its bounding box.
+     *
+     * @param l the index at which the line is to be stored
+     * @param startLng the longitude of the start of the line
+     * @param startLat the latitude of the start of the line
+     * @param endLng the longitude of the end of the line
+     * @param endLat the latitude of the end of the line
+     */
+    private void addLine(int l, double startLng, double startLat, double endLng, double endLat){
+        int o = l * STRIDE;
+        lines[o + START_LNG] = startLng;
+        lines[o + START_LAT] = startLat;
+        lines[o + END_LNG] = endLng;
+        lines[o + END_LAT] = endLat;
+        lineBoxes[o + MIN_LNG] = Math.min(startLng, endLng);
+        lineBoxes[o + MIN_LAT] = Math.min(startLat, endLat);
+        lineBoxes[o + MAX_LNG] = Math.max(startLng, endLng);
+        lineBoxes[o + MAX_LAT] = Math.max(startLat, endLat);
+    }
+
+    /**
+     * Initialises a box so that growing it by any point makes it contain exactly that point.
+     *
+     * @param boxes the array in which the box is stored
+     * @param b the index of the box
+     */
+    private static void emptyBox(double[] boxes, int b){
+        int o = b * STRIDE;
+        boxes[o + MIN_LNG] = Double.POSITIVE_INFINITY;
+        boxes[o + MIN_LAT] = Double.POSITIVE_INFINITY;
+        boxes[o + MAX_LNG] = Double.NEGATIVE_INFINITY;
+        boxes[o + MAX_LAT] = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Grows a box so that it contains a point.
+     *
+     * @param boxes the array in which the box is stored
+     * @param b the index of the box
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     */
+    private static void growBox(double[] boxes, int b, double lng, double lat){
+        int o = b * STRIDE;
+        boxes[o + MIN_LNG] = Math.min(boxes[o + MIN_LNG], lng);
+        boxes[o + MIN_LAT] = Math.min(boxes[o + MIN_LAT], lat);
+        boxes[o + MAX_LNG] = Math.max(boxes[o + MAX_LNG], lng);
+        boxes[o + MAX_LAT] = Math.max(boxes[o + MAX_LAT], lat);
+    }
+
+    /**
+     * Checks if a stored box overlaps another box. Boxes which only touch count as overlapping.
+     *
+     * @param boxes the array in which the stored box is kept
+     * @param b the index of the stored box
+     * @param minLng the minimum longitude of the other box
+     * @param minLat the minimum latitude of the other box
+     * @param maxLng the maximum longitude of the other box
+     * @param maxLat the maximum latitude of the other box
+     * @return true if the boxes overlap, false otherwise
+     */
+    private static boolean boxOverlaps(double[] boxes, int b, double minLng, double minLat, double maxLng, double maxLat){
+        int o = b * STRIDE;
+        return boxes[o + MIN_LNG] <= maxLng && boxes[o + MAX_LNG] >= minLng
+                && boxes[o + MIN_LAT] <= maxLat && boxes[o + MAX_LAT] >= minLat;
+    }
+
+    /**
+     * Checks if a stored box contains a point. Points on the boundary of the box count as contained.
+     *
+     * @param boxes the array in which the box is stored
+     * @param b the index of the box
+     * @param lng the longitude of the point
+     * @param lat the latitude of the point
+     * @return true if the box contains the point, false otherwise
+     */
+    private static boolean boxContains(double[] boxes, int b, double lng, double lat){
+        return boxOverlaps(boxes, b, lng, lat, lng, lat);
+    }
+}